@@ -0,0 +1,100 @@
+package com.swarmer.finance.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+@Configuration
+public class BlockchainClientConfig {
+
+    /**
+     * Client shared by the chain services. One JDK HttpClient keeps pooled
+     * keep-alive connections per host and negotiates HTTP/2 where the API
+     * offers it. Every request is bounded by the connect and read timeouts.
+     * The builder comes from Spring Boot with observations attached, so
+     * http.client.requests is recorded with the host as client.name.
+     */
+    @Bean
+    public RestClient blockchainRestClient(RestClient.Builder builder,
+            @Value("${blockchain.http.connect-timeout:PT5S}") Duration connectTimeout,
+            @Value("${blockchain.http.read-timeout:PT20S}") Duration readTimeout) {
+        var httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        var requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        return builder
+                .requestFactory(requestFactory)
+                .requestInterceptor(gzip())
+                .build();
+    }
+
+    /**
+     * Asks for gzip and inflates gzip responses, which the JDK client leaves
+     * to the caller.
+     */
+    private static ClientHttpRequestInterceptor gzip() {
+        return (request, body, execution) -> {
+            request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+            var response = execution.execute(request, body);
+            var encoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+            return "gzip".equalsIgnoreCase(encoding) ? new GzipResponse(response) : response;
+        };
+    }
+
+    private static class GzipResponse implements ClientHttpResponse {
+        private final ClientHttpResponse response;
+        private final HttpHeaders headers;
+        private InputStream body;
+
+        GzipResponse(ClientHttpResponse response) {
+            this.response = response;
+            this.headers = new HttpHeaders();
+            this.headers.putAll(response.getHeaders());
+            this.headers.remove(HttpHeaders.CONTENT_ENCODING);
+            this.headers.remove(HttpHeaders.CONTENT_LENGTH);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = new GZIPInputStream(response.getBody());
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.swarmer.finance.config;
+
+import java.io.IOException;
+
+import javax.cache.CacheManager;
+
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+
+@Configuration
+public class CacheConfig {
+
+    /**
+     * Cache manager of the Hibernate second-level cache. It is created from
+     * a provider of its own, so every application context gets separate
+     * regions instead of the one the JCache provider registry shares per
+     * configuration URI.
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() throws IOException {
+        return new EhcacheCachingProvider().getCacheManager(new ClassPathResource("ehcache.xml").getURI(),
+                getClass().getClassLoader());
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+}
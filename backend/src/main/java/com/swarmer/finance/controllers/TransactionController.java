@@ -2,21 +2,28 @@ package com.swarmer.finance.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.swarmer.finance.dto.BalanceAssertionDto;
 import com.swarmer.finance.dto.CategorySum;
 import com.swarmer.finance.dto.ImportDto;
 import com.swarmer.finance.dto.RuleDto;
 import com.swarmer.finance.dto.Summary;
 import com.swarmer.finance.dto.TransactionDto;
+import com.swarmer.finance.dto.WalletSyncJobDto;
 import com.swarmer.finance.models.BankType;
 import com.swarmer.finance.models.TransactionType;
 import com.swarmer.finance.security.UserPrincipal;
+import com.swarmer.finance.services.BalanceAssertionService;
+import com.swarmer.finance.services.ExportService;
 import com.swarmer.finance.services.ImportService;
 import com.swarmer.finance.services.TransactionService;
 import com.swarmer.finance.services.WalletService;
@@ -33,17 +40,22 @@ import java.util.Set;
 @RestController
 @RequestMapping("/api/transactions")
 public class TransactionController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
     private final TransactionService transactionService;
     private final ImportService importService;
     private final WalletService walletService;
+    private final ExportService exportService;
+    private final BalanceAssertionService assertionService;
 
     @Autowired
     public TransactionController(TransactionService transactionService, ImportService importService,
-            WalletService walletService) {
+            WalletService walletService, ExportService exportService, BalanceAssertionService assertionService) {
         this.transactionService = transactionService;
         this.importService = importService;
         this.walletService = walletService;
+        this.exportService = exportService;
+        this.assertionService = assertionService;
     }
 
     @GetMapping
@@ -56,11 +68,44 @@ public class TransactionController {
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
             @RequestParam(defaultValue = "0") int offset,
-            @RequestParam(defaultValue = "20") int limit) {
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor) {
         Long userId = principal.getUserDto().id();
-        return ResponseEntity.ok(transactionService.getTransactions(userId, accounts, search, category, currency,
+        var page = transactionService.getTransactions(userId, accounts, search, category, currency,
                 from == null ? null : from.atStartOfDay(), to == null ? null : to.atTime(LocalTime.MAX), offset,
-                limit));
+                limit, cursor);
+        var response = ResponseEntity.ok();
+        if (page.cursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.cursor());
+        }
+        return response.body(page.transactions());
+    }
+
+    @GetMapping("export")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+            @AuthenticationPrincipal UserPrincipal principal,
+            @RequestParam(required = false) Set<Long> accounts,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) Long category,
+            @RequestParam(required = false) String currency,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean balances) {
+        Long userId = principal.getUserDto().id();
+        var csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("Unsupported export format: " + format);
+        }
+        var opfrom = from == null ? null : from.atStartOfDay();
+        var opto = to == null ? null : to.atTime(LocalTime.MAX);
+        StreamingResponseBody body = out -> exportService.exportTransactions(userId, accounts, search, category,
+                currency, opfrom, opto, csv, balances, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(csv ? "text/csv" : "application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=transactions." + (csv ? "csv" : "ndjson"))
+                .body(body);
     }
 
     @GetMapping("/{id}")
@@ -187,6 +232,43 @@ public class TransactionController {
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping("balances/rebuild")
+    public ResponseEntity<Void> rebuildBalances(@AuthenticationPrincipal UserPrincipal principal) {
+        Long userId = principal.getUserDto().id();
+        transactionService.rebuildBalances(userId);
+        return ResponseEntity.ok().build();
+    }
+
+    @GetMapping("balances/check")
+    public ResponseEntity<List<Long>> checkBalances(@AuthenticationPrincipal UserPrincipal principal) {
+        Long userId = principal.getUserDto().id();
+        return ResponseEntity.ok(transactionService.checkBalances(userId));
+    }
+
+    @GetMapping("assertions")
+    public ResponseEntity<List<BalanceAssertionDto>> getAssertions(@RequestParam Long account,
+            @AuthenticationPrincipal UserPrincipal principal) {
+        Long userId = principal.getUserDto().id();
+        return ResponseEntity.ok(assertionService.getAssertions(userId, account));
+    }
+
+    @PostMapping("assertions")
+    public ResponseEntity<BalanceAssertionDto> saveAssertion(
+            @RequestBody BalanceAssertionDto assertion,
+            @AuthenticationPrincipal UserPrincipal principal) {
+        Long userId = principal.getUserDto().id();
+        return ResponseEntity.ok(assertionService.saveAssertion(assertion, userId));
+    }
+
+    @DeleteMapping("assertions/{id}")
+    public ResponseEntity<Void> deleteAssertion(
+            @PathVariable Long id,
+            @AuthenticationPrincipal UserPrincipal principal) {
+        Long userId = principal.getUserDto().id();
+        assertionService.deleteAssertion(id, userId);
+        return ResponseEntity.ok().build();
+    }
+
     @GetMapping("checkwallets")
     public ResponseEntity<Long> checkWallets(@RequestParam(required = false) Set<Long> accounts,
             @RequestParam(required = false, defaultValue = "false") boolean fullScan,
@@ -194,4 +276,19 @@ public class TransactionController {
         Long userId = principal.getUserDto().id();
         return ResponseEntity.ok(walletService.importWallets(userId, accounts, fullScan));
     }
+
+    @PostMapping("wallets/sync")
+    public ResponseEntity<WalletSyncJobDto> syncWallets(@RequestParam(required = false) Set<Long> accounts,
+            @RequestParam(required = false, defaultValue = "false") boolean fullScan,
+            @AuthenticationPrincipal UserPrincipal principal) {
+        Long userId = principal.getUserDto().id();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(walletService.submitSync(userId, accounts, fullScan));
+    }
+
+    @GetMapping("wallets/sync/{id}")
+    public ResponseEntity<WalletSyncJobDto> getWalletSync(@PathVariable Long id,
+            @AuthenticationPrincipal UserPrincipal principal) {
+        Long userId = principal.getUserDto().id();
+        return ResponseEntity.ok(walletService.getSync(id, userId));
+    }
 }
\ No newline at end of file
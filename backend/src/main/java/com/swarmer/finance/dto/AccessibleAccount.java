@@ -0,0 +1,4 @@
+package com.swarmer.finance.dto;
+
+public record AccessibleAccount(Long id, Long groupId, Long ownerId, String currency, Integer scale) {
+}
@@ -0,0 +1,7 @@
+package com.swarmer.finance.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public record AccountBalance(Long accountId, BigDecimal debit, BigDecimal credit, LocalDateTime opdate) {
+}
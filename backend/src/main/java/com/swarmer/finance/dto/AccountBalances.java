@@ -0,0 +1,75 @@
+package com.swarmer.finance.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.swarmer.finance.models.Account;
+
+/**
+ * Unscaled debit and credit totals by account, folded once so callers can
+ * look up a balance without scanning the balance rows.
+ */
+public class AccountBalances {
+    public static final AccountBalances EMPTY = new AccountBalances(Map.of());
+
+    private final Map<Long, AccountBalance> balances;
+
+    public AccountBalances(Map<Long, AccountBalance> balances) {
+        this.balances = balances;
+    }
+
+    public static AccountBalances of(List<TransactionSum> sums) {
+        Map<Long, AccountBalance> result = new HashMap<>();
+        for (var s : sums) {
+            if (s.accountId() != null) {
+                result.merge(s.accountId(),
+                        new AccountBalance(s.accountId(), s.debit(), BigDecimal.ZERO, s.opdate()),
+                        AccountBalances::add);
+            }
+            if (s.recipientId() != null) {
+                result.merge(s.recipientId(),
+                        new AccountBalance(s.recipientId(), BigDecimal.ZERO, s.credit(), s.opdate()),
+                        AccountBalances::add);
+            }
+        }
+        return new AccountBalances(result);
+    }
+
+    public AccountBalance get(Long accountId) {
+        return balances.get(accountId);
+    }
+
+    /**
+     * Returns whether the account has any operations or corrections.
+     */
+    public boolean hasHistory(Long accountId) {
+        var balance = balances.get(accountId);
+        return balance != null && balance.opdate() != null;
+    }
+
+    public LocalDateTime opdate(Long accountId) {
+        var balance = balances.get(accountId);
+        return balance == null ? null : balance.opdate();
+    }
+
+    /**
+     * Returns the unscaled balance: start balance plus credits minus debits.
+     */
+    public BigDecimal balance(Account account) {
+        return balance(account.getId(), account.getStartBalance());
+    }
+
+    public BigDecimal balance(Long accountId, BigDecimal startBalance) {
+        var balance = balances.get(accountId);
+        return balance == null ? startBalance : startBalance.add(balance.credit()).subtract(balance.debit());
+    }
+
+    private static AccountBalance add(AccountBalance a, AccountBalance b) {
+        var opdate = a.opdate() == null || (b.opdate() != null && b.opdate().isAfter(a.opdate())) ? b.opdate()
+                : a.opdate();
+        return new AccountBalance(a.accountId(), a.debit().add(b.debit()), a.credit().add(b.credit()), opdate);
+    }
+}
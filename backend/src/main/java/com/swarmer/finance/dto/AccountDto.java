@@ -52,6 +52,14 @@ public record AccountDto(
                 entity.isDeleted());
     }
 
+    /**
+     * Returns a copy with the unscaled balance at the given operation date.
+     */
+    public AccountDto withBalance(BigDecimal balance, LocalDateTime opdate) {
+        return new AccountDto(id, name, fullName, currency, startBalance, chain, address, scale,
+                setScale(balance, scale), opdate, deleted);
+    }
+
     public static String getFullName(Account entity) {
         if (entity == null) {
             return null;
@@ -0,0 +1,16 @@
+package com.swarmer.finance.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Correction implied by a balance assertion: the asserted balance minus the
+ * balance the transactions up to the end of its operation date add up to.
+ */
+public interface AssertionDelta {
+    Long getAccountId();
+
+    LocalDateTime getOpdate();
+
+    BigDecimal getDelta();
+}
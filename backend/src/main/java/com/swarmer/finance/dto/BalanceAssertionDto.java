@@ -0,0 +1,19 @@
+package com.swarmer.finance.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.swarmer.finance.models.Account;
+import com.swarmer.finance.models.BalanceAssertion;
+
+public record BalanceAssertionDto(
+        Long id,
+        Long accountId,
+        @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss[XXX]") LocalDateTime opdate,
+        BigDecimal balance) {
+    public static BalanceAssertionDto fromEntity(BalanceAssertion entity, Account account) {
+        return new BalanceAssertionDto(entity.getId(), entity.getAccountId(), entity.getOpdate(),
+                AccountDto.setScale(entity.getBalance(), account.getScale()));
+    }
+}
@@ -2,8 +2,6 @@ package com.swarmer.finance.dto;
 
 import java.math.BigDecimal;
 
-import com.swarmer.finance.models.Category;
-
 import lombok.Data;
 
 @Data
@@ -12,12 +10,6 @@ public class CategorySum {
     String currency;
     BigDecimal sum;
 
-    public CategorySum(Category category, String currency, BigDecimal sum) {
-        this.category = CategoryDto.fromEntity(category);
-        this.currency = currency;
-        this.sum = sum;
-    }
-
     public CategorySum(CategoryDto category, String currency, BigDecimal sum) {
         this.category = category;
         this.currency = currency;
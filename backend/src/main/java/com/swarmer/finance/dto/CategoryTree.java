@@ -0,0 +1,106 @@
+package com.swarmer.finance.dto;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.swarmer.finance.models.Category;
+import com.swarmer.finance.models.TransactionType;
+
+/**
+ * Immutable snapshot of the categories visible to a set of owners, with full
+ * names, levels and types resolved once. Replaced as a whole when any of the
+ * categories changes.
+ */
+public class CategoryTree {
+    private final long version;
+    private final Map<Long, CategoryDto> categories;
+    // categories of different owners shown as one, keyed by type, level and lower case full name
+    private final Map<String, List<CategoryDto>> aliases;
+
+    private CategoryTree(long version, Map<Long, CategoryDto> categories, Map<String, List<CategoryDto>> aliases) {
+        this.version = version;
+        this.categories = categories;
+        this.aliases = aliases;
+    }
+
+    public static CategoryTree of(long version, Collection<Category> entities) {
+        var byId = new HashMap<Long, Category>();
+        entities.forEach(c -> byId.put(c.getId(), c));
+        var dtos = new HashMap<Long, CategoryDto>();
+        entities.forEach(c -> build(c, byId, dtos));
+        var aliases = new HashMap<String, List<CategoryDto>>();
+        dtos.values().stream()
+                .sorted(Comparator.comparing(CategoryDto::id))
+                .forEach(dto -> aliases.computeIfAbsent(key(dto), k -> new ArrayList<>()).add(dto));
+        return new CategoryTree(version, Collections.unmodifiableMap(dtos), Collections.unmodifiableMap(aliases));
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public Collection<CategoryDto> categories() {
+        return categories.values();
+    }
+
+    public Optional<CategoryDto> find(Long id) {
+        return Optional.ofNullable(categories.get(id));
+    }
+
+    /**
+     * Maps the entity from the snapshot, falling back to the entity graph for
+     * categories outside of it.
+     */
+    public CategoryDto toDto(Category entity) {
+        if (entity == null) {
+            return null;
+        }
+        var dto = categories.get(entity.getId());
+        return dto != null ? dto : CategoryDto.fromEntity(entity);
+    }
+
+    /**
+     * Returns the ids of the categories with the same type, level and full name
+     * as the given one, including itself.
+     */
+    public List<Long> aliases(CategoryDto category) {
+        return aliases.getOrDefault(key(category), List.of(category)).stream().map(CategoryDto::id).toList();
+    }
+
+    /**
+     * Returns the category the user sees for the given one: the user's own
+     * alias if there is one, otherwise the oldest alias.
+     */
+    public CategoryDto merged(CategoryDto category, Long userId) {
+        var list = aliases.getOrDefault(key(category), List.of(category));
+        return list.stream().filter(c -> userId.equals(c.ownerId())).findFirst().orElse(list.getFirst());
+    }
+
+    private static CategoryDto build(Category entity, Map<Long, Category> byId, Map<Long, CategoryDto> dtos) {
+        var dto = dtos.get(entity.getId());
+        if (dto != null) {
+            return dto;
+        }
+        if (entity.getParent() == null) {
+            dto = new CategoryDto(entity.getId(), entity.getOwnerId(), null, entity.getName(), entity.getName(),
+                    TransactionType.fromValue(entity.getId().intValue()), 0);
+        } else {
+            var parent = build(byId.getOrDefault(entity.getParent().getId(), entity.getParent()), byId, dtos);
+            var fullName = parent.level() == 0 ? entity.getName() : parent.fullName() + " / " + entity.getName();
+            dto = new CategoryDto(entity.getId(), entity.getOwnerId(), parent.id(), entity.getName(), fullName,
+                    parent.type(), parent.level() + 1);
+        }
+        dtos.put(dto.id(), dto);
+        return dto;
+    }
+
+    private static String key(CategoryDto category) {
+        return category.type() + ":" + category.level() + ":" + category.fullName().toLowerCase();
+    }
+}
@@ -0,0 +1,8 @@
+package com.swarmer.finance.dto;
+
+/**
+ * Outcome of removing the transactions of accounts: rows deleted and
+ * transfers turned into one-sided transactions of the remaining account.
+ */
+public record DeletedTransactions(int deleted, int converted) {
+}
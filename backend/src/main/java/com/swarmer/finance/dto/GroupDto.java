@@ -1,8 +1,8 @@
 package com.swarmer.finance.dto;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import com.swarmer.finance.models.AccountGroup;
 
@@ -18,7 +18,16 @@ public record GroupDto(
         List<AccountDto> accounts,
         List<AclDto> permissions,
         LocalDateTime opdate) {
-    public static GroupDto fromEntity(AccountGroup entity, Long userId, List<TransactionSum> balances) {
+    public static GroupDto fromEntity(AccountGroup entity, Long userId, AccountBalances balances) {
+        return fromEntity(entity, userId, balances, Map.of());
+    }
+
+    /**
+     * Maps the group reusing the cached account views of the user, so only
+     * balances are filled in per account.
+     */
+    public static GroupDto fromEntity(AccountGroup entity, Long userId, AccountBalances balances,
+            Map<Long, AccountDto> views) {
         var owner = entity.getOwner().getId().equals(userId)
                 && entity.getAcls().stream().noneMatch(acl -> acl.isAdmin());
         var coowner = entity.getAcls().stream().anyMatch(acl -> acl.isAdmin()
@@ -36,19 +45,10 @@ public record GroupDto(
         var acls = entity.getAcls().stream().map(acl -> AclDto.fromEntity(acl)).toList();
         var accounts = entity.getAccounts().stream()
                 .map(a -> {
-                    var debit = balances.stream().filter(b -> a.getId().equals(b.accountId()))
-                            .map(b -> b.debit())
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                    var credit = balances.stream().filter(b -> a.getId().equals(b.recipientId()))
-                            .map(b -> b.credit())
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                    var balance = a.getStartBalance().add(credit).subtract(debit);
-                    var lastOpdate = balances.stream()
-                            .filter(b -> a.getId().equals(b.accountId())
-                                    || a.getId().equals(b.recipientId()))
-                            .map(b -> b.opdate()).max(LocalDateTime::compareTo)
-                            .orElse(null);
-                    return AccountDto.fromEntity(a, userId, balance, lastOpdate);
+                    var view = views.get(a.getId());
+                    return view == null
+                            ? AccountDto.fromEntity(a, userId, balances.balance(a), balances.opdate(a.getId()))
+                            : view.withBalance(balances.balance(a), balances.opdate(a.getId()));
                 })
                 .sorted((a, b) -> a.id().compareTo(b.id()))
                 .toList();
@@ -8,11 +8,11 @@ public record RuleDto(
         ConditionType conditionType,
         String conditionValue,
         CategoryDto category) {
-    public static RuleDto fromEntity(Rule rule) {
+    public static RuleDto fromEntity(Rule rule, CategoryTree categories) {
         return new RuleDto(
                 rule.getId(),
                 rule.getConditionType(),
                 rule.getConditionValue(),
-                CategoryDto.fromEntity(rule.getCategory()));
+                categories.toDto(rule.getCategory()));
     }
 }
\ No newline at end of file
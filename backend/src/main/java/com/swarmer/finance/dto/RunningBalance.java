@@ -0,0 +1,14 @@
+package com.swarmer.finance.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Balance of the account of one posting right after the transaction.
+ */
+public interface RunningBalance {
+    Long getTransactionId();
+
+    Short getSide();
+
+    BigDecimal getBalance();
+}
@@ -0,0 +1,33 @@
+package com.swarmer.finance.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import com.swarmer.finance.exceptions.InvalidCursorException;
+
+/**
+ * Keyset position in the transaction listing ordered by opdate and id
+ * descending. Balances are not carried: a write before the position between
+ * two page requests would make them wrong, so every page reads its running
+ * balances from checkpoints and postings.
+ */
+public record TransactionCursor(LocalDateTime opdate, Long id) {
+    public String encode() {
+        var value = opdate + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor returned with a previous page. Balances carried by
+     * cursors of earlier versions are ignored.
+     */
+    public static TransactionCursor decode(String cursor) {
+        try {
+            var parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", -1);
+            return new TransactionCursor(LocalDateTime.parse(parts[0]), Long.valueOf(parts[1]));
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
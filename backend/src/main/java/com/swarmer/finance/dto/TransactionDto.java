@@ -4,7 +4,6 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
-import com.swarmer.finance.models.Transaction;
 import com.swarmer.finance.models.TransactionType;
 
 public record TransactionDto(
@@ -20,24 +19,23 @@ public record TransactionDto(
                 String currency,
                 String party,
                 String details) {
-        public static TransactionDto fromEntity(Transaction entity, long userId, BigDecimal accauntBalance,
-                        BigDecimal recipientBalance) {
-                var account = AccountDto.fromEntity(entity.getAccount(), userId, accauntBalance,
-                                entity.getOpdate());
-                var recipient = AccountDto.fromEntity(entity.getRecipient(), userId, recipientBalance,
-                                entity.getOpdate());
-                var category = CategoryDto.fromEntity(entity.getCategory());
+        /**
+         * Builds the DTO from a flat row and the account views with the balances
+         * after this transaction already applied.
+         */
+        public static TransactionDto fromRow(TransactionRow row, AccountDto account, AccountDto recipient,
+                        CategoryDto category) {
                 var type = account != null && recipient != null ? TransactionType.TRANSFER
                                 : (category == null
                                                 ? (account == null ? TransactionType.INCOME : TransactionType.EXPENSE)
                                                 : category.type());
                 var dscale = account != null ? account.scale() : (recipient != null ? recipient.scale() : 2);
                 var cscale = recipient != null ? recipient.scale() : dscale;
-                var debit = AccountDto.setScale(entity.getDebit(), dscale);
-                var credit = AccountDto.setScale(entity.getCredit(), cscale);
-                return new TransactionDto(entity.getId(), entity.getOwnerId(), entity.getOpdate(), type, account,
-                                debit, recipient, credit, category, entity.getCurrency(),
-                                entity.getParty(),
-                                entity.getDetails());
+                var debit = AccountDto.setScale(row.debit(), dscale);
+                var credit = AccountDto.setScale(row.credit(), cscale);
+                return new TransactionDto(row.id(), row.ownerId(), row.opdate(), type, account,
+                                debit, recipient, credit, category, row.currency(),
+                                row.party(),
+                                row.details());
         }
 }
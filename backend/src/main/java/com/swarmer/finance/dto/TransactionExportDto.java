@@ -0,0 +1,23 @@
+package com.swarmer.finance.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.swarmer.finance.models.TransactionType;
+
+public record TransactionExportDto(
+        Long id,
+        @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss[XXX]") LocalDateTime opdate,
+        TransactionType type,
+        String account,
+        BigDecimal debit,
+        String recipient,
+        BigDecimal credit,
+        String category,
+        String currency,
+        String party,
+        String details,
+        BigDecimal accountBalance,
+        BigDecimal recipientBalance) {
+}
@@ -0,0 +1,6 @@
+package com.swarmer.finance.dto;
+
+import java.util.List;
+
+public record TransactionPage(List<TransactionDto> transactions, String cursor) {
+}
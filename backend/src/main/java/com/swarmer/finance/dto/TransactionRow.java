@@ -0,0 +1,22 @@
+package com.swarmer.finance.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Flat transaction row with unscaled amounts and bare ids, read without
+ * hydrating the account and category graphs.
+ */
+public record TransactionRow(
+        Long id,
+        Long ownerId,
+        LocalDateTime opdate,
+        Long accountId,
+        BigDecimal debit,
+        Long recipientId,
+        BigDecimal credit,
+        Long categoryId,
+        String currency,
+        String party,
+        String details) {
+}
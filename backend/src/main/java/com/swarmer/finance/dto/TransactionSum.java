@@ -2,7 +2,26 @@ package com.swarmer.finance.dto;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public record TransactionSum(Long accountId, Long recipientId, BigDecimal debit, BigDecimal credit,
         LocalDateTime opdate) {
+    /**
+     * Folds sums into unscaled net balances by account, debits decrease and
+     * credits increase the balance.
+     */
+    public static Map<Long, BigDecimal> net(List<TransactionSum> balances) {
+        Map<Long, BigDecimal> result = new HashMap<>();
+        for (var b : balances) {
+            if (b.accountId() != null) {
+                result.merge(b.accountId(), b.debit().negate(), BigDecimal::add);
+            }
+            if (b.recipientId() != null) {
+                result.merge(b.recipientId(), b.credit(), BigDecimal::add);
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,9 @@
+package com.swarmer.finance.dto;
+
+import java.util.List;
+
+/**
+ * Transactions read from a chain and the cursor to continue from next time.
+ */
+public record WalletHistory(List<ImportDto> records, WalletSyncCursor cursor) {
+}
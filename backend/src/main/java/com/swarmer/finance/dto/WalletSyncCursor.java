@@ -0,0 +1,27 @@
+package com.swarmer.finance.dto;
+
+/**
+ * Where the history of a wallet has been read up to: the highest block height
+ * and block timestamp in epoch milliseconds, and the id of the newest
+ * transaction seen. Blocks are confirmed as a whole, so the next sync reads
+ * strictly after them.
+ */
+public record WalletSyncCursor(Long blockHeight, Long blockTimestamp, String fingerprint) {
+    public static final WalletSyncCursor NONE = new WalletSyncCursor(null, null, null);
+
+    /**
+     * Returns the cursor moved to the given transaction if it is newer.
+     */
+    public WalletSyncCursor advance(Long height, Long timestamp, String id) {
+        var newer = (height != null && (blockHeight == null || height > blockHeight))
+                || (timestamp != null && (blockTimestamp == null || timestamp > blockTimestamp));
+        if (!newer) {
+            return this;
+        }
+        return new WalletSyncCursor(max(blockHeight, height), max(blockTimestamp, timestamp), id);
+    }
+
+    private static Long max(Long a, Long b) {
+        return a == null ? b : b == null ? a : Long.valueOf(Math.max(a, b));
+    }
+}
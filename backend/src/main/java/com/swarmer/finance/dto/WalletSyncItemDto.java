@@ -0,0 +1,11 @@
+package com.swarmer.finance.dto;
+
+import com.swarmer.finance.models.WalletSyncItem;
+import com.swarmer.finance.models.WalletSyncStatus;
+
+public record WalletSyncItemDto(Long accountId, WalletSyncStatus status, int fetched, int imported, String error) {
+    public static WalletSyncItemDto fromEntity(WalletSyncItem entity) {
+        return new WalletSyncItemDto(entity.getAccountId(), entity.getStatus(), entity.getFetched(),
+                entity.getImported(), entity.getError());
+    }
+}
@@ -0,0 +1,30 @@
+package com.swarmer.finance.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.swarmer.finance.models.WalletSyncJob;
+import com.swarmer.finance.models.WalletSyncStatus;
+
+public record WalletSyncJobDto(
+        Long id,
+        WalletSyncStatus status,
+        boolean fullScan,
+        String error,
+        long imported,
+        List<WalletSyncItemDto> wallets,
+        LocalDateTime created,
+        LocalDateTime finished) {
+    public static WalletSyncJobDto fromEntity(WalletSyncJob entity) {
+        var wallets = entity.getItems().stream().map(WalletSyncItemDto::fromEntity).toList();
+        return new WalletSyncJobDto(
+                entity.getId(),
+                entity.getStatus(),
+                entity.isFullScan(),
+                entity.getError(),
+                wallets.stream().mapToLong(WalletSyncItemDto::imported).sum(),
+                wallets,
+                entity.getCreated(),
+                entity.getFinished());
+    }
+}
@@ -2,21 +2,32 @@ package com.swarmer.finance.dto.dump;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import com.swarmer.finance.models.AccountGroup;
+import com.swarmer.finance.models.BalanceAssertion;
 import com.swarmer.finance.models.Category;
 import com.swarmer.finance.models.Rule;
 import com.swarmer.finance.models.Transaction;
 
 public record Dump(Long ownerId, LocalDateTime created, List<DumpGroup> groups, List<DumpCategory> categories,
-                List<DumpTransaction> transactions, List<DumpRule> rules) {
+                List<DumpTransaction> transactions, List<DumpRule> rules, List<DumpAssertion> assertions) {
+
+        public Dump(Long ownerId, LocalDateTime created, List<DumpGroup> groups, List<DumpCategory> categories,
+                        List<DumpTransaction> transactions, List<DumpRule> rules) {
+                this(ownerId, created, groups, categories, transactions, rules, List.of());
+        }
 
         public static Dump fromEntities(Long userId, List<AccountGroup> groups, List<Category> categories,
-                        List<Transaction> transactions, List<Rule> rules) {
+                        List<Transaction> transactions, List<Rule> rules, List<BalanceAssertion> assertions,
+                        Map<Long, Integer> scales) {
                 return new Dump(userId, LocalDateTime.now(),
                                 groups.stream().map(DumpGroup::fromEntity).toList(),
                                 categories.stream().map(DumpCategory::fromEntity).toList(),
                                 transactions.stream().map(DumpTransaction::fromEntity).toList(),
-                                rules.stream().map(DumpRule::fromEntity).toList());
+                                rules.stream().map(DumpRule::fromEntity).toList(),
+                                assertions.stream()
+                                                .map(a -> DumpAssertion.fromEntity(a, scales.getOrDefault(a.getAccountId(), 2)))
+                                                .toList());
         }
 }
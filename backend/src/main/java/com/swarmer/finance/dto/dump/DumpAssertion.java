@@ -0,0 +1,15 @@
+package com.swarmer.finance.dto.dump;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.swarmer.finance.dto.AccountDto;
+import com.swarmer.finance.models.BalanceAssertion;
+
+public record DumpAssertion(Long accountId, LocalDateTime opdate, BigDecimal balance, LocalDateTime created,
+        LocalDateTime updated) {
+    public static DumpAssertion fromEntity(BalanceAssertion assertion, int scale) {
+        return new DumpAssertion(assertion.getAccountId(), assertion.getOpdate(),
+                AccountDto.setScale(assertion.getBalance(), scale), assertion.getCreated(), assertion.getUpdated());
+    }
+}
@@ -7,8 +7,13 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 import java.util.List;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 @Entity
 @Table(name = "account_groups")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -28,8 +33,10 @@ public class AccountGroup {
     private boolean deleted = false;
 
     @OneToMany(mappedBy = "group", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Account> accounts;
 
+    // permissions are always read from the database, never from a cache
     @OneToMany(mappedBy = "group", cascade = CascadeType.ALL)
     private List<Acl> acls;
 
@@ -0,0 +1,41 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Statement that the balance of the account was {@code balance} at the end of
+ * {@code opdate}. The correction it implies is derived when balances are read.
+ */
+@Entity
+@Table(name = "balance_assertions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceAssertion {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Column(nullable = false)
+    private LocalDateTime opdate;
+
+    @Column(nullable = false)
+    private BigDecimal balance;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime created = LocalDateTime.now();
+
+    @Column(nullable = false)
+    private LocalDateTime updated = LocalDateTime.now();
+}
@@ -0,0 +1,31 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Debit and credit totals of one account for one calendar month.
+ * Rows are derived from transactions and recalculated on every write.
+ */
+@Entity
+@Table(name = "balance_checkpoints")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceCheckpoint {
+    @EmbeddedId
+    private BalanceCheckpointId id;
+
+    @Column(nullable = false)
+    private BigDecimal debit = BigDecimal.ZERO;
+
+    @Column(nullable = false)
+    private BigDecimal credit = BigDecimal.ZERO;
+
+    @Column
+    private LocalDateTime opdate;
+}
@@ -0,0 +1,17 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceCheckpointId implements Serializable {
+    private Long accountId;
+    private LocalDate period;
+}
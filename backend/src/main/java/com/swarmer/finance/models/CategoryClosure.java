@@ -0,0 +1,29 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Links a category to each of its ancestors and to itself. Rows are maintained
+ * by the {@code categories_closure} trigger.
+ */
+@Entity
+@Immutable
+@Table(name = "category_closure")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryClosure {
+    @EmbeddedId
+    private CategoryClosureId id;
+
+    @Column(nullable = false)
+    private Integer depth;
+
+    @Column(name = "ancestor_level", nullable = false)
+    private Integer ancestorLevel;
+}
@@ -0,0 +1,52 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Debit and credit totals of the transactions between one account pair in one
+ * category for one calendar month. Rows are derived from transactions and
+ * recalculated on every write together with the balance checkpoints.
+ */
+@Entity
+@Immutable
+@Table(name = "monthly_rollups")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MonthlyRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "account_id")
+    private Account account;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "recipient_id")
+    private Account recipient;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "category_id")
+    private Category category;
+
+    @Column(nullable = false)
+    private LocalDate period;
+
+    @Column(nullable = false)
+    private BigDecimal debit = BigDecimal.ZERO;
+
+    @Column(nullable = false)
+    private BigDecimal credit = BigDecimal.ZERO;
+
+    @Column
+    private LocalDateTime opdate;
+}
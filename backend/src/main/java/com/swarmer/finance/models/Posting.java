@@ -0,0 +1,38 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.Immutable;
+
+/**
+ * One account side of a transaction with a signed amount: the debited account
+ * gets {@code -debit}, the credited recipient gets {@code credit}.
+ * Rows are maintained by the {@code transactions_postings} trigger.
+ */
+@Entity
+@Immutable
+@Table(name = "postings")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Posting {
+    public static final short DEBIT = 0;
+    public static final short CREDIT = 1;
+
+    @EmbeddedId
+    private PostingId id;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Column(nullable = false)
+    private LocalDateTime opdate;
+
+    @Column(nullable = false)
+    private BigDecimal amount;
+}
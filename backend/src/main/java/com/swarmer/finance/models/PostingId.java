@@ -0,0 +1,16 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostingId implements Serializable {
+    private Long transactionId;
+    private Short side;
+}
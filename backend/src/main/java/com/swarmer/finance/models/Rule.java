@@ -13,7 +13,8 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class Rule {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "rules_id_seq")
+    @SequenceGenerator(name = "rules_id_seq", sequenceName = "rules_id_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "owner_id", nullable = false)
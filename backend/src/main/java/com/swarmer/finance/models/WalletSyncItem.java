@@ -0,0 +1,45 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "wallet_sync_items")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletSyncItem {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "job_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private WalletSyncJob job;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private WalletSyncStatus status = WalletSyncStatus.PENDING;
+
+    @Column(nullable = false)
+    private int fetched;
+
+    @Column(nullable = false)
+    private int imported;
+
+    @Column
+    private String error;
+
+    @Column(nullable = false)
+    private LocalDateTime updated = LocalDateTime.now();
+}
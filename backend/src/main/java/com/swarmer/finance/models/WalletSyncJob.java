@@ -0,0 +1,53 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background import of a user's wallets, with one item per wallet.
+ */
+@Entity
+@Table(name = "wallet_sync_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletSyncJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId;
+
+    // node running the job, the holder of its leases is <nodeId>/<id>
+    @Column(name = "node_id")
+    private String nodeId;
+
+    @Column(name = "full_scan", nullable = false)
+    private boolean fullScan;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private WalletSyncStatus status = WalletSyncStatus.PENDING;
+
+    @Column
+    private String error;
+
+    @OneToMany(mappedBy = "job", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("id")
+    private List<WalletSyncItem> items = new ArrayList<>();
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime created = LocalDateTime.now();
+
+    @Column(nullable = false)
+    private LocalDateTime updated = LocalDateTime.now();
+
+    @Column
+    private LocalDateTime finished;
+}
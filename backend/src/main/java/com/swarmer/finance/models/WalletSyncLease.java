@@ -0,0 +1,24 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "wallet_sync_leases")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletSyncLease {
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    @Column(nullable = false)
+    private String holder;
+
+    @Column(nullable = false)
+    private LocalDateTime expires;
+}
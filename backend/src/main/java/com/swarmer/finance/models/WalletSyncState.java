@@ -0,0 +1,36 @@
+package com.swarmer.finance.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+import com.swarmer.finance.dto.WalletSyncCursor;
+
+@Entity
+@Table(name = "wallet_sync_state")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletSyncState {
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    @Column(name = "block_height")
+    private Long blockHeight;
+
+    @Column(name = "block_timestamp")
+    private Long blockTimestamp;
+
+    @Column
+    private String fingerprint;
+
+    @Column(nullable = false)
+    private LocalDateTime updated = LocalDateTime.now();
+
+    public WalletSyncCursor toCursor() {
+        return new WalletSyncCursor(blockHeight, blockTimestamp, fingerprint);
+    }
+}
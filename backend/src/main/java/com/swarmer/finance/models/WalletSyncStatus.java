@@ -0,0 +1,9 @@
+package com.swarmer.finance.models;
+
+public enum WalletSyncStatus {
+    PENDING,
+    RUNNING,
+    DONE,
+    SKIPPED,
+    FAILED
+}
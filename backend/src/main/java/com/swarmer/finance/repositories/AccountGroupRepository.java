@@ -1,13 +1,18 @@
 package com.swarmer.finance.repositories;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+
 import com.swarmer.finance.models.AccountGroup;
 
 import java.util.List;
 
 @Repository
 public interface AccountGroupRepository extends JpaRepository<AccountGroup, Long> {
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<AccountGroup> findByOwnerIdOrderById(Long ownerId);
 }
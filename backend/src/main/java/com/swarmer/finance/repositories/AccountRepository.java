@@ -1,8 +1,26 @@
 package com.swarmer.finance.repositories;
 
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import com.swarmer.finance.dto.AccessibleAccount;
 import com.swarmer.finance.models.Account;
 
 public interface AccountRepository extends JpaRepository<Account, Long> {
+    @Query("select new com.swarmer.finance.dto.AccessibleAccount(a.id, g.id, g.owner.id, a.currency, a.scale) "
+            + "from Account a join a.group g where g.owner.id = ?1 "
+            + "or exists (select 1 from Acl acl where acl.group = g and acl.user.id = ?1) order by g.id, a.id")
+    List<AccessibleAccount> findAccessibleByUserId(Long userId);
+
+    /**
+     * Returns the wallets of all users: accounts with a chain and an address
+     * in groups that are not deleted, ordered by owner.
+     */
+    @Query("select new com.swarmer.finance.dto.AccessibleAccount(a.id, g.id, g.owner.id, a.currency, a.scale) "
+            + "from Account a join a.group g where not a.deleted and not g.deleted "
+            + "and a.chain is not null and a.chain <> '' and a.address is not null and a.address <> '' "
+            + "order by g.owner.id, a.id")
+    List<AccessibleAccount> findWallets();
 }
@@ -3,6 +3,7 @@ package com.swarmer.finance.repositories;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.swarmer.finance.models.Acl;
@@ -11,4 +12,7 @@ import com.swarmer.finance.models.AclId;
 @Repository
 public interface AclRepository extends JpaRepository<Acl, AclId> {
     List<Acl> findByUserIdOrderByGroupId(Long userId);
+
+    @Query("select distinct acl.group.owner.id from Acl acl where acl.user.id = ?1")
+    List<Long> findOwnerIdsByUserId(Long userId);
 } 
\ No newline at end of file
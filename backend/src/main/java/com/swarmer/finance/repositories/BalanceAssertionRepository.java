@@ -0,0 +1,42 @@
+package com.swarmer.finance.repositories;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.swarmer.finance.dto.AssertionDelta;
+import com.swarmer.finance.models.BalanceAssertion;
+
+@Repository
+public interface BalanceAssertionRepository extends JpaRepository<BalanceAssertion, Long> {
+    List<BalanceAssertion> findByAccountIdOrderByOpdateDesc(Long accountId);
+
+    List<BalanceAssertion> findAllByOwnerId(Long ownerId);
+
+    void deleteAllByOwnerId(Long ownerId);
+
+    Optional<BalanceAssertion> findByAccountIdAndOpdate(Long accountId, LocalDateTime opdate);
+
+    /**
+     * Derives the corrections of the assertions before {@code to} starting with
+     * the one in effect at {@code from}, ordered by account and opdate. The
+     * transaction balance at an assertion is read from the checkpoints before
+     * its month plus the postings of the month up to its opdate.
+     */
+    @Query(value = "select b.account_id as \"accountId\", b.opdate as \"opdate\", "
+            + "b.balance - coalesce(a.start_balance, 0) - coalesce(c.amount, 0) - coalesce(p.amount, 0) as \"delta\" "
+            + "from balance_assertions b join accounts a on a.id = b.account_id "
+            + "left join lateral (select sum(credit - debit) as amount from balance_checkpoints "
+            + "where account_id = b.account_id and period < cast(date_trunc('month', b.opdate) as date)) c on true "
+            + "left join lateral (select sum(amount) as amount from postings where account_id = b.account_id "
+            + "and opdate >= date_trunc('month', b.opdate) and opdate <= b.opdate) p on true "
+            + "where b.account_id in (?1) and b.opdate < ?3 and b.opdate >= coalesce((select max(e.opdate) "
+            + "from balance_assertions e where e.account_id = b.account_id and e.opdate < ?2), ?2) "
+            + "order by b.account_id, b.opdate", nativeQuery = true)
+    List<AssertionDelta> findDeltas(Collection<Long> accountIds, LocalDateTime from, LocalDateTime to);
+}
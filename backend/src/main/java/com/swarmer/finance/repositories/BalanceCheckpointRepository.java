@@ -0,0 +1,52 @@
+package com.swarmer.finance.repositories;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.QueryHint;
+
+import com.swarmer.finance.dto.AccountBalance;
+import com.swarmer.finance.models.BalanceCheckpoint;
+import com.swarmer.finance.models.BalanceCheckpointId;
+
+@Repository
+public interface BalanceCheckpointRepository extends JpaRepository<BalanceCheckpoint, BalanceCheckpointId> {
+    @Query("select new com.swarmer.finance.dto.AccountBalance(c.id.accountId, sum(c.debit), sum(c.credit), max(c.opdate)) "
+            + "from BalanceCheckpoint c where c.id.accountId in ?1 group by c.id.accountId")
+    List<AccountBalance> sumByAccountIds(Collection<Long> accountIds);
+
+    @Query("select new com.swarmer.finance.dto.AccountBalance(c.id.accountId, sum(c.debit), sum(c.credit), max(c.opdate)) "
+            + "from BalanceCheckpoint c where c.id.accountId in ?1 and c.id.period < ?2 group by c.id.accountId")
+    List<AccountBalance> sumByAccountIdsBefore(Collection<Long> accountIds, LocalDate period);
+
+    /**
+     * Locks the account rows in id order until the end of the transaction, so
+     * refreshes of the same account run one after another. The lock does not
+     * conflict with the key share locks taken by inserts referencing accounts.
+     */
+    @Query(value = "select id from accounts where id in (?1) order by id for no key update", nativeQuery = true)
+    List<Long> lockAccounts(Collection<Long> accountIds);
+
+    // only balance_checkpoints changes, so cached entities and queries stay valid
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "balance_checkpoints"))
+    @Modifying(flushAutomatically = true)
+    @Query(value = "delete from balance_checkpoints where account_id in (?1) and period >= ?2", nativeQuery = true)
+    int deleteByAccountIds(Collection<Long> accountIds, LocalDate period);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "balance_checkpoints"))
+    @Modifying
+    @Query(value = "insert into balance_checkpoints (account_id, period, debit, credit, opdate) "
+            + "select account_id, cast(date_trunc('month', opdate) as date), "
+            + "sum(case when side = 0 then -amount else 0 end), sum(case when side = 1 then amount else 0 end), max(opdate) "
+            + "from postings where account_id in (?1) and opdate >= ?2 "
+            + "group by account_id, cast(date_trunc('month', opdate) as date)", nativeQuery = true)
+    int insertByAccountIds(Collection<Long> accountIds, LocalDate period);
+}
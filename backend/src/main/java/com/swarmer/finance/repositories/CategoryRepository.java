@@ -3,19 +3,27 @@ package com.swarmer.finance.repositories;
 import java.util.Collection;
 import java.util.List;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+
 import com.swarmer.finance.models.Category;
 
 @Repository
 public interface CategoryRepository extends JpaRepository<Category, Long> {
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<Category> findByOwnerIdIsNullOrOwnerIdIn(Collection<Long> ids);
 
     List<Category> findAllByOwnerIdAndParentIdAndNameIgnoreCase(Long ownerId, Long parentId, String name);
 
+    @Query("select c.id from Category c where upper(c.name) like ?1 and (c.ownerId is null or c.ownerId in ?2)")
+    List<Long> findIdsByNameLike(String pattern, Collection<Long> ownerIds);
+
     void deleteAllByOwnerIdIsNotNull();
 
     void deleteAllByOwnerId(Long ownerId);
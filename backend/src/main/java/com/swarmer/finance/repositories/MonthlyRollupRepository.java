@@ -0,0 +1,57 @@
+package com.swarmer.finance.repositories;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.QueryHint;
+
+import com.swarmer.finance.models.MonthlyRollup;
+
+@Repository
+public interface MonthlyRollupRepository extends JpaRepository<MonthlyRollup, Long> {
+    // only monthly_rollups changes, so cached entities and queries stay valid
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "monthly_rollups"))
+    @Modifying(flushAutomatically = true)
+    @Query(value = "delete from monthly_rollups where (account_id in (?1) or recipient_id in (?1)) and period >= ?2",
+            nativeQuery = true)
+    int deleteByAccountIds(Collection<Long> accountIds, LocalDate period);
+
+    /**
+     * Inserts the rollups of the accounts from the given month on. A row of a
+     * transfer that a concurrent refresh of its other end inserted after the
+     * delete is replaced with the totals read here.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "monthly_rollups"))
+    @Modifying
+    @Query(value = "insert into monthly_rollups (account_id, recipient_id, category_id, period, debit, credit, opdate) "
+            + "select account_id, recipient_id, category_id, cast(date_trunc('month', opdate) as date), "
+            + "sum(debit), sum(credit), max(opdate) "
+            + "from transactions where (account_id in (?1) or recipient_id in (?1)) and opdate >= ?2 "
+            + "group by account_id, recipient_id, category_id, cast(date_trunc('month', opdate) as date) "
+            + "on conflict (account_id, recipient_id, category_id, period) do update "
+            + "set debit = excluded.debit, credit = excluded.credit, opdate = excluded.opdate",
+            nativeQuery = true)
+    int insertByAccountIds(Collection<Long> accountIds, LocalDate period);
+
+    /**
+     * Moves the rollups of a category to another one, adding them to the rows
+     * the other category already has for the same account pair and month.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "monthly_rollups"))
+    @Modifying
+    @Query(value = "with moved as (delete from monthly_rollups where category_id = ?1 "
+            + "returning account_id, recipient_id, period, debit, credit, opdate) "
+            + "insert into monthly_rollups (account_id, recipient_id, category_id, period, debit, credit, opdate) "
+            + "select account_id, recipient_id, ?2, period, debit, credit, opdate from moved "
+            + "on conflict (account_id, recipient_id, category_id, period) do update "
+            + "set debit = monthly_rollups.debit + excluded.debit, credit = monthly_rollups.credit + excluded.credit, "
+            + "opdate = greatest(monthly_rollups.opdate, excluded.opdate)", nativeQuery = true)
+    int replaceCategoryId(Long oldId, Long newId);
+}
@@ -0,0 +1,43 @@
+package com.swarmer.finance.repositories;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.swarmer.finance.dto.RunningBalance;
+import com.swarmer.finance.models.Posting;
+import com.swarmer.finance.models.PostingId;
+
+@Repository
+public interface PostingRepository extends JpaRepository<Posting, PostingId> {
+    /**
+     * Computes post-transaction balances of the given transactions with a window
+     * over the postings between {@code from} and {@code to}, starting from the
+     * account start balance plus the checkpoints before {@code period}.
+     * {@code from} must be the start of {@code period}.
+     */
+    @Query(value = "select w.transaction_id as \"transactionId\", w.side as \"side\", w.balance as \"balance\" from ("
+            + "select p.transaction_id, p.side, coalesce(a.start_balance, 0) + coalesce(c.amount, 0) "
+            + "+ sum(p.amount) over (partition by p.account_id order by p.opdate, p.transaction_id, p.side) as balance "
+            + "from postings p join accounts a on a.id = p.account_id "
+            + "left join (select account_id, sum(credit - debit) as amount from balance_checkpoints "
+            + "where account_id in (?1) and period < ?4 group by account_id) c on c.account_id = p.account_id "
+            + "where p.account_id in (?1) and p.opdate >= ?2 and p.opdate <= ?3) w "
+            + "where w.transaction_id in (?5)", nativeQuery = true)
+    List<RunningBalance> findRunningBalances(Collection<Long> accountIds, LocalDateTime from, LocalDateTime to,
+            LocalDate period, Collection<Long> transactionIds);
+
+    /**
+     * Returns the raw balance of the account at the end of {@code to}: the
+     * start balance plus all postings up to and including {@code to}.
+     */
+    @Query(value = "select coalesce(a.start_balance, 0) + coalesce((select sum(p.amount) from postings p "
+            + "where p.account_id = a.id and p.opdate <= ?2), 0) from accounts a where a.id = ?1", nativeQuery = true)
+    BigDecimal findBalanceAt(Long accountId, LocalDateTime to);
+}
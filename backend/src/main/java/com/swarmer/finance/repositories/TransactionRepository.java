@@ -3,21 +3,80 @@ package com.swarmer.finance.repositories;
 import java.util.Collection;
 import java.util.List;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+
 import com.swarmer.finance.models.Transaction;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+    // same as AccountDto.getFullName for the account a of group g
+    String ACCOUNT_FULL_NAME = "g.name || case when trim(coalesce(a.name, '')) <> '' then ' ' || a.name "
+            + "when (select count(*) from accounts o where o.group_id = g.id and not o.deleted) > 1 "
+            + "then ' ' || a.currency else '' end";
+
     List<Transaction> findAllByOwnerId(Long userId);
 
     List<Transaction> findByAccountIdInOrRecipientIdIn(Collection<Long> aIds, Collection<Long> rIds);
 
     void deleteAllByOwnerId(Long userId);
 
+    @Query(value = "select cast(account_id as bigint) from transactions where owner_id = ?1 and account_id is not null "
+            + "union select cast(recipient_id as bigint) from transactions where owner_id = ?1 and recipient_id is not null",
+            nativeQuery = true)
+    List<Long> findAccountIdsByOwnerId(Long userId);
+
+    /**
+     * Returns the accounts on the other side of transfers that involve only
+     * one of the given accounts.
+     */
+    @Query(value = "select distinct cast(case when account_id in (?1) then recipient_id else account_id end as bigint) "
+            + "from transactions where (account_id in (?1) and recipient_id not in (?1)) "
+            + "or (recipient_id in (?1) and account_id not in (?1))", nativeQuery = true)
+    List<Long> findCounterpartIds(Collection<Long> accountIds);
+
+    /**
+     * Deletes the transactions that involve no other accounts than the given ones.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "transactions"))
+    @Modifying(flushAutomatically = true)
+    @Query(value = "delete from transactions where (account_id in (?1) or recipient_id in (?1)) "
+            + "and (account_id is null or account_id in (?1)) and (recipient_id is null or recipient_id in (?1))",
+            nativeQuery = true)
+    int deleteByAccountIds(Collection<Long> accountIds);
+
+    /**
+     * Turns transfers from the given accounts into income of the recipient,
+     * keeping the account as party and currency.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "transactions"))
+    @Modifying
+    @Query(value = "update transactions t set currency = a.currency, "
+            + "party = coalesce(t.party, a.address, " + ACCOUNT_FULL_NAME + "), "
+            + "account_id = null, updated = localtimestamp "
+            + "from accounts a join account_groups g on g.id = a.group_id "
+            + "where t.account_id = a.id and a.id in (?1)", nativeQuery = true)
+    int detachAccounts(Collection<Long> accountIds);
+
+    /**
+     * Turns transfers to the given accounts into expenses of the sender,
+     * keeping the recipient as party and currency.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "transactions"))
+    @Modifying
+    @Query(value = "update transactions t set currency = a.currency, "
+            + "party = coalesce(t.party, a.address, " + ACCOUNT_FULL_NAME + "), "
+            + "recipient_id = null, updated = localtimestamp "
+            + "from accounts a join account_groups g on g.id = a.group_id "
+            + "where t.recipient_id = a.id and a.id in (?1)", nativeQuery = true)
+    int detachRecipients(Collection<Long> accountIds);
+
     @Modifying
     @Query("update Transaction set category.id = ?2 where category.id = ?1")
     int replaceCategoryId(Long oldId, Long newId);
@@ -0,0 +1,60 @@
+package com.swarmer.finance.repositories;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.QueryHint;
+
+import com.swarmer.finance.models.WalletSyncJob;
+
+@Repository
+public interface WalletSyncJobRepository extends JpaRepository<WalletSyncJob, Long> {
+    Optional<WalletSyncJob> findByIdAndOwnerId(Long id, Long ownerId);
+
+    /**
+     * Finishes the job unless it is finished already, e.g. failed by the
+     * sweep while it was still running.
+     *
+     * @return 1 when the job was finished, 0 otherwise
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "wallet_sync_jobs"))
+    @Modifying
+    @Query(value = "update wallet_sync_jobs set status = ?2, error = ?3, updated = ?4, finished = ?4 "
+            + "where id = ?1 and finished is null", nativeQuery = true)
+    int finish(Long id, String status, String error, LocalDateTime now);
+
+    /**
+     * Fails the pending and running items of the unfinished jobs last updated
+     * before the given time.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "wallet_sync_items"))
+    @Modifying
+    @Query(value = "update wallet_sync_items set status = 'FAILED', error = ?2, updated = ?3 "
+            + "where status in ('PENDING', 'RUNNING') and job_id in "
+            + "(select id from wallet_sync_jobs where finished is null and updated < ?1)", nativeQuery = true)
+    int failStaleItems(LocalDateTime before, String error, LocalDateTime now);
+
+    /**
+     * Fails the unfinished jobs last updated before the given time.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "wallet_sync_jobs"))
+    @Modifying
+    @Query(value = "update wallet_sync_jobs set status = 'FAILED', error = ?2, updated = ?3, finished = ?3 "
+            + "where finished is null and updated < ?1", nativeQuery = true)
+    int failStale(LocalDateTime before, String error, LocalDateTime now);
+
+    /**
+     * Deletes the jobs finished before the given time with their items.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "wallet_sync_jobs"))
+    @Modifying
+    @Query(value = "delete from wallet_sync_jobs where finished < ?1", nativeQuery = true)
+    int deleteFinishedBefore(LocalDateTime before);
+}
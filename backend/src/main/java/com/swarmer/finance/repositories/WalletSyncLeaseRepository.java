@@ -0,0 +1,84 @@
+package com.swarmer.finance.repositories;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.QueryHint;
+
+import com.swarmer.finance.models.WalletSyncLease;
+
+@Repository
+public interface WalletSyncLeaseRepository extends JpaRepository<WalletSyncLease, Long> {
+    /**
+     * Takes the wallet for the holder unless another holder has an unexpired
+     * lease on it.
+     *
+     * @return 1 when the lease was taken, 0 otherwise
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "wallet_sync_leases"))
+    @Modifying
+    @Query(value = "insert into wallet_sync_leases (account_id, holder, expires) "
+            + "values (?1, ?2, localtimestamp + ?3 * interval '1 second') "
+            + "on conflict (account_id) do update set holder = excluded.holder, expires = excluded.expires "
+            + "where wallet_sync_leases.expires < localtimestamp", nativeQuery = true)
+    int acquire(Long accountId, String holder, long seconds);
+
+    /**
+     * Extends the holder's lease on the wallet, if the holder still has it.
+     * The row stays locked until the transaction ends, so the lease can not
+     * be taken over meanwhile.
+     *
+     * @return 1 when the lease is still held, 0 when it was taken over
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "wallet_sync_leases"))
+    @Modifying
+    @Query(value = "update wallet_sync_leases set expires = localtimestamp + ?3 * interval '1 second' "
+            + "where account_id = ?1 and holder = ?2", nativeQuery = true)
+    int extend(Long accountId, String holder, long seconds);
+
+    /**
+     * Extends all leases the holder still has.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "wallet_sync_leases"))
+    @Modifying
+    @Query(value = "update wallet_sync_leases set expires = localtimestamp + ?2 * interval '1 second' "
+            + "where holder = ?1", nativeQuery = true)
+    int extendAll(String holder, long seconds);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "wallet_sync_leases"))
+    @Modifying
+    @Query(value = "delete from wallet_sync_leases where holder = ?1", nativeQuery = true)
+    int releaseAll(String holder);
+
+    /**
+     * Takes the owner for the holder unless another holder has an unexpired
+     * lease on it. The lease is not released, it keeps the owner taken until
+     * it expires.
+     *
+     * @return 1 when the lease was taken, 0 otherwise
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "wallet_sync_owner_leases"))
+    @Modifying
+    @Query(value = "insert into wallet_sync_owner_leases (owner_id, holder, expires) "
+            + "values (?1, ?2, localtimestamp + ?3 * interval '1 second') "
+            + "on conflict (owner_id) do update set holder = excluded.holder, expires = excluded.expires "
+            + "where wallet_sync_owner_leases.expires < localtimestamp", nativeQuery = true)
+    int acquireOwner(Long ownerId, String holder, long seconds);
+
+    /**
+     * Releases the leases of the unfinished jobs last updated before the
+     * given time.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "wallet_sync_leases"))
+    @Modifying
+    @Query(value = "delete from wallet_sync_leases l using wallet_sync_jobs j "
+            + "where j.finished is null and j.updated < ?1 and l.holder = j.node_id || '/' || j.id",
+            nativeQuery = true)
+    int releaseStale(LocalDateTime before);
+}
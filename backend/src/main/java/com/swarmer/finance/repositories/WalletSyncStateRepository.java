@@ -0,0 +1,10 @@
+package com.swarmer.finance.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.swarmer.finance.models.WalletSyncState;
+
+@Repository
+public interface WalletSyncStateRepository extends JpaRepository<WalletSyncState, Long> {
+}
@@ -1,32 +1,159 @@
 package com.swarmer.finance.services;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.hibernate.SessionFactory;
 import org.springframework.stereotype.Service;
 
+import com.swarmer.finance.dto.AccessibleAccount;
+import com.swarmer.finance.dto.AccountDto;
 import com.swarmer.finance.models.Account;
-import com.swarmer.finance.repositories.AccountGroupRepository;
+import com.swarmer.finance.models.AccountGroup;
+import com.swarmer.finance.repositories.AccountRepository;
 import com.swarmer.finance.repositories.AclRepository;
 
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Resolves which accounts and category owners a user can see, and how the
+ * user sees those accounts. Results are cached per user; every write to
+ * groups, accounts or permissions has to evict the users it affects, which
+ * evicts them on the other instances as well once the write commits. The
+ * views are built from second-level cached accounts and groups, so an
+ * eviction drops those too, or an instance that did not write would rebuild
+ * the views from its own stale copies.
+ */
 @Service
 public class AclService {
+    private static final String REGION = "acl";
+
     private final AclRepository aclRepository;
-    private final AccountGroupRepository groupRepository;
+    private final AccountRepository accountRepository;
+    private final CacheInvalidator cacheInvalidator;
+    private final SessionFactory sessionFactory;
+    private final Map<Long, UserAccess> cache = new ConcurrentHashMap<>();
+    private final Map<Long, Map<Long, AccountDto>> views = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
 
-    public AclService(AclRepository aclRepository, AccountGroupRepository groupRepository) {
+    public AclService(AclRepository aclRepository, AccountRepository accountRepository,
+            CacheInvalidator cacheInvalidator, EntityManagerFactory entityManagerFactory) {
         this.aclRepository = aclRepository;
-        this.groupRepository = groupRepository;
+        this.accountRepository = accountRepository;
+        this.cacheInvalidator = cacheInvalidator;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        cacheInvalidator.subscribe(REGION, userIds -> {
+            evictEntities();
+            remove(userIds);
+        }, () -> {
+            evictEntities();
+            clear();
+        });
+    }
+
+    /**
+     * Returns the accounts of the groups the user owns or is granted access to.
+     */
+    public List<AccessibleAccount> getAccessibleAccounts(Long userId) {
+        return getAccess(userId).accounts();
+    }
+
+    /**
+     * Returns the user and the owners of the groups shared with the user.
+     */
+    public List<Long> getOwnerIds(Long userId) {
+        return getAccess(userId).ownerIds();
     }
 
     public List<Account> getAccounts(Long userId) {
-        var userGroups = groupRepository.findByOwnerIdOrderById(userId);
-        var sharedGroups = aclRepository.findByUserIdOrderByGroupId(userId).stream()
-                .map(acl -> acl.getGroup())
-                .filter(group -> !group.getOwner().getId().equals(userId))
-                .toList();
-        return Stream.concat(userGroups.stream(), sharedGroups.stream())
-                .flatMap(group -> group.getAccounts().stream())
+        return accountRepository.findAllById(getAccessibleAccounts(userId).stream()
+                .map(AccessibleAccount::id)
+                .toList());
+    }
+
+    /**
+     * Returns the accessible accounts by id as the user sees them, with full
+     * names, shared suffixes and scales resolved, but without balances.
+     */
+    public Map<Long, AccountDto> getAccountViews(Long userId) {
+        var accountViews = views.get(userId);
+        if (accountViews != null) {
+            return accountViews;
+        }
+        var readVersion = version.get();
+        accountViews = getAccounts(userId).stream()
+                .collect(Collectors.toUnmodifiableMap(Account::getId,
+                        a -> AccountDto.fromEntity(a, userId, null, null)));
+        synchronized (version) {
+            if (readVersion == version.get()) {
+                views.put(userId, accountViews);
+            }
+        }
+        return accountViews;
+    }
+
+    /**
+     * Evicts the owner of the group and all users it is shared with.
+     */
+    public void evict(AccountGroup group) {
+        evict(Stream.concat(Stream.of(group.getOwner().getId()),
+                group.getAcls() == null ? Stream.empty() : group.getAcls().stream().map(acl -> acl.getUser().getId()))
+                .toList());
+    }
+
+    public void evict(Collection<Long> userIds) {
+        TransactionHooks.nowAndAfterCompletion(() -> remove(userIds));
+        cacheInvalidator.publish(REGION, userIds);
+    }
+
+    private UserAccess getAccess(Long userId) {
+        var access = cache.get(userId);
+        if (access != null) {
+            return access;
+        }
+        var readVersion = version.get();
+        var ownerIds = Stream.concat(Stream.of(userId), aclRepository.findOwnerIdsByUserId(userId).stream())
+                .distinct()
                 .toList();
+        access = new UserAccess(accountRepository.findAccessibleByUserId(userId), ownerIds);
+        // keep only what was read without an eviction in the meantime
+        synchronized (version) {
+            if (readVersion == version.get()) {
+                cache.put(userId, access);
+            }
+        }
+        return access;
+    }
+
+    private void remove(Collection<Long> userIds) {
+        synchronized (version) {
+            version.incrementAndGet();
+            userIds.forEach(cache::remove);
+            userIds.forEach(views::remove);
+        }
+    }
+
+    private void clear() {
+        synchronized (version) {
+            version.incrementAndGet();
+            cache.clear();
+            views.clear();
+        }
+    }
+
+    private void evictEntities() {
+        var regions = sessionFactory.getCache();
+        regions.evictEntityData(Account.class);
+        regions.evictEntityData(AccountGroup.class);
+        regions.evictCollectionData(AccountGroup.class.getName() + ".accounts");
+        regions.evictDefaultQueryRegion();
+    }
+
+    private record UserAccess(List<AccessibleAccount> accounts, List<Long> ownerIds) {
     }
 }
@@ -1,7 +1,11 @@
 package com.swarmer.finance.services;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -11,16 +15,21 @@ import org.springframework.stereotype.Service;
 import com.swarmer.finance.dto.AccountDto;
 import com.swarmer.finance.dto.CategoryDto;
 import com.swarmer.finance.dto.dump.Dump;
+import com.swarmer.finance.dto.dump.DumpAssertion;
 import com.swarmer.finance.models.Account;
 import com.swarmer.finance.models.AccountGroup;
 import com.swarmer.finance.models.Acl;
 import com.swarmer.finance.models.AclId;
+import com.swarmer.finance.models.BalanceAssertion;
 import com.swarmer.finance.models.Category;
 import com.swarmer.finance.models.Rule;
 import com.swarmer.finance.models.Transaction;
+import com.swarmer.finance.models.TransactionType;
 import com.swarmer.finance.repositories.AccountGroupRepository;
 import com.swarmer.finance.repositories.AccountRepository;
+import com.swarmer.finance.repositories.BalanceAssertionRepository;
 import com.swarmer.finance.repositories.CategoryRepository;
+import com.swarmer.finance.repositories.PostingRepository;
 import com.swarmer.finance.repositories.RuleRepository;
 import com.swarmer.finance.repositories.TransactionRepository;
 import com.swarmer.finance.repositories.UserRepository;
@@ -35,17 +44,27 @@ public class BackupService {
     private final TransactionRepository transactionRepository;
     private final RuleRepository ruleRepository;
     private final UserRepository userRepository;
+    private final CheckpointService checkpointService;
+    private final BalanceAssertionRepository assertionRepository;
+    private final AclService aclService;
+    private final PostingRepository postingRepository;
 
     public BackupService(AccountGroupRepository groupRepository, AccountRepository accountRepository,
             CategoryRepository categoryRepository, TransactionRepository transactionRepository,
             RuleRepository ruleRepository,
-            UserRepository userRepository) {
+            UserRepository userRepository, CheckpointService checkpointService,
+            BalanceAssertionRepository assertionRepository, AclService aclService,
+            PostingRepository postingRepository) {
         this.groupRepository = groupRepository;
         this.accountRepository = accountRepository;
         this.categoryRepository = categoryRepository;
         this.transactionRepository = transactionRepository;
         this.ruleRepository = ruleRepository;
         this.userRepository = userRepository;
+        this.checkpointService = checkpointService;
+        this.assertionRepository = assertionRepository;
+        this.aclService = aclService;
+        this.postingRepository = postingRepository;
     }
 
     @Transactional
@@ -57,7 +76,10 @@ public class BackupService {
                 .filter(c -> c.getOwnerId() != null)
                 .sorted((a, b) -> CategoryDto.fromEntity(a).level() - CategoryDto.fromEntity(b).level())
                 .toList();
-        return Dump.fromEntities(userId, groups, categories, transactions, rules);
+        var assertions = assertionRepository.findAllByOwnerId(userId);
+        var scales = accountRepository.findAllById(assertions.stream().map(BalanceAssertion::getAccountId)
+                .distinct().toList()).stream().collect(Collectors.toMap(Account::getId, Account::getScale));
+        return Dump.fromEntities(userId, groups, categories, transactions, rules, assertions, scales);
     }
 
     @Transactional
@@ -65,12 +87,21 @@ public class BackupService {
         var user = userRepository.findById(userId)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with id " + userId));
         var userGroups = groupRepository.findByOwnerIdOrderById(userId);
+        // users whose visible accounts change with the restore
+        var aclUsers = new HashSet<Long>();
+        aclUsers.add(userId);
+        userGroups.forEach(g -> g.getAcls().forEach(acl -> aclUsers.add(acl.getUser().getId())));
+        dump.groups().forEach(g -> g.acls().forEach(acl -> aclUsers.add(acl.userId())));
+        aclService.evict(aclUsers);
         var userAccounts = userGroups.stream()
                 .flatMap(group -> group.getAccounts().stream())
                 .collect(Collectors.toMap(Account::getId, a -> a));
+        // accounts whose balances change with the restore
+        var affected = new HashSet<>(transactionRepository.findAccountIdsByOwnerId(userId));
         // clear existing data
         transactionRepository.deleteAllByOwnerId(userId);
         ruleRepository.deleteAllByOwnerId(userId);
+        assertionRepository.deleteAllByOwnerId(userId);
         categoryRepository.deleteAllByOwnerId(userId);
         // groups
         var accMap = new HashMap<Long, Account>();
@@ -140,6 +171,9 @@ public class BackupService {
             catMap.put(c.id(), category);
         }
         // transactions
+        // movements of the legacy correction rows, which are not stored
+        var movements = new HashMap<Long, List<Movement>>();
+        var corrections = new ArrayList<Correction>();
         for (var t : dump.transactions()) {
             var account = t.accountId() == null ? null : accMap.get(t.accountId());
             if (t.accountId() != null && account == null) {
@@ -149,14 +183,10 @@ public class BackupService {
                         continue;
                     throw new RuntimeException("Account not found: " + t.accountId());
                 }
-                if (!account.getGroup().getOwner().getId().equals(userId)) {
-                    var acl = account.getGroup().getAcls().stream().filter(a -> a.getUser().getId().equals(userId))
-                            .findFirst().orElse(null);
-                    if (acl == null || acl.isReadonly()) {
-                        if (skipInvalidData)
-                            continue;
-                        throw new RuntimeException("User " + userId + " is not owner of Account " + t.accountId());
-                    }
+                if (!isWritable(account, userId)) {
+                    if (skipInvalidData)
+                        continue;
+                    throw new RuntimeException("User " + userId + " is not owner of Account " + t.accountId());
                 }
             }
             var recipient = t.recipientId() == null ? null : accMap.get(t.recipientId());
@@ -167,14 +197,10 @@ public class BackupService {
                         continue;
                     throw new RuntimeException("Recipient not found: " + t.recipientId());
                 }
-                if (!recipient.getGroup().getOwner().getId().equals(userId)) {
-                    var acl = recipient.getGroup().getAcls().stream().filter(a -> a.getUser().getId().equals(userId))
-                            .findFirst().orElse(null);
-                    if (acl == null || acl.isReadonly()) {
-                        if (skipInvalidData)
-                            continue;
-                        throw new RuntimeException("User " + userId + " is not owner of Recipient " + t.recipientId());
-                    }
+                if (!isWritable(recipient, userId)) {
+                    if (skipInvalidData)
+                        continue;
+                    throw new RuntimeException("User " + userId + " is not owner of Recipient " + t.recipientId());
                 }
             }
             if (account == null && recipient == null) {
@@ -193,6 +219,31 @@ public class BackupService {
             var cscale = recipient != null ? recipient.getScale() : dscale;
             var debit = AccountDto.unsetScale(t.debit(), dscale);
             var credit = AccountDto.unsetScale(t.debit(), cscale);
+            if (account != null) {
+                affected.add(account.getId());
+            }
+            if (recipient != null) {
+                affected.add(recipient.getId());
+            }
+            // dumps written before balance assertions still hold corrections as transactions
+            if (t.categoryId() != null && t.categoryId() == TransactionType.CORRECTION.getValue()) {
+                var corrected = recipient != null ? recipient : account;
+                if (corrected == null) {
+                    if (skipInvalidData)
+                        continue;
+                    throw new RuntimeException("Correction without account or recipient");
+                }
+                if (account != null) {
+                    movements.computeIfAbsent(account.getId(), id -> new ArrayList<>())
+                            .add(new Movement(t.opdate(), debit.negate()));
+                }
+                if (recipient != null) {
+                    movements.computeIfAbsent(recipient.getId(), id -> new ArrayList<>())
+                            .add(new Movement(t.opdate(), credit));
+                }
+                corrections.add(new Correction(corrected.getId(), t.opdate(), t.created(), t.updated()));
+                continue;
+            }
             var transaction = new Transaction(null, userId, t.opdate(), account, debit, recipient, credit,
                     category, t.currency(), t.party(), t.details(), t.created(), t.updated());
             transactionRepository.save(transaction);
@@ -207,5 +258,56 @@ public class BackupService {
                     r.updated());
             ruleRepository.save(rule);
         }
+        // balance assertions, a correction asserts the balance it led to as migration V11 does: the stored
+        // ledger of all owners up to its opdate, plus the restored correction rows, which are not stored
+        transactionRepository.flush();
+        var assertions = new LinkedHashMap<AssertionKey, BalanceAssertion>();
+        for (var c : corrections) {
+            var balance = movements.getOrDefault(c.accountId(), List.of()).stream()
+                    .filter(m -> !m.opdate().isAfter(c.opdate()))
+                    .map(Movement::amount)
+                    .reduce(postingRepository.findBalanceAt(c.accountId(), c.opdate()), BigDecimal::add);
+            assertions.put(new AssertionKey(c.accountId(), c.opdate()), new BalanceAssertion(null, userId,
+                    c.accountId(), c.opdate(), balance, c.created(), c.updated()));
+        }
+        for (var a : dump.assertions() == null ? List.<DumpAssertion>of() : dump.assertions()) {
+            var account = a.accountId() == null ? null : accMap.get(a.accountId());
+            if (account == null && a.accountId() != null) {
+                account = accountRepository.findById(a.accountId()).orElse(null);
+                if (account != null && !isWritable(account, userId)) {
+                    if (skipInvalidData)
+                        continue;
+                    throw new RuntimeException("User " + userId + " is not owner of Account " + a.accountId());
+                }
+            }
+            if (account == null) {
+                if (skipInvalidData)
+                    continue;
+                throw new RuntimeException("Account not found: " + a.accountId());
+            }
+            assertions.put(new AssertionKey(account.getId(), a.opdate()), new BalanceAssertion(null, userId,
+                    account.getId(), a.opdate(), AccountDto.unsetScale(a.balance(), account.getScale()), a.created(),
+                    a.updated()));
+        }
+        assertionRepository.saveAll(assertions.values());
+        checkpointService.rebuild(affected);
+    }
+
+    /**
+     * Whether the user owns the group of the account or holds a permission on
+     * it that is not read only.
+     */
+    private static boolean isWritable(Account account, Long userId) {
+        return account.getGroup().getOwner().getId().equals(userId) || account.getGroup().getAcls().stream()
+                .anyMatch(acl -> acl.getUser().getId().equals(userId) && !acl.isReadonly());
+    }
+
+    private record Movement(LocalDateTime opdate, BigDecimal amount) {
+    }
+
+    private record Correction(Long accountId, LocalDateTime opdate, LocalDateTime created, LocalDateTime updated) {
+    }
+
+    private record AssertionKey(Long accountId, LocalDateTime opdate) {
     }
 }
@@ -0,0 +1,147 @@
+package com.swarmer.finance.services;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Service;
+
+import com.swarmer.finance.dto.AccountDto;
+import com.swarmer.finance.dto.AssertionDelta;
+import com.swarmer.finance.dto.BalanceAssertionDto;
+import com.swarmer.finance.dto.TransactionSum;
+import com.swarmer.finance.exceptions.ResourceNotFoundException;
+import com.swarmer.finance.models.Account;
+import com.swarmer.finance.models.BalanceAssertion;
+import com.swarmer.finance.repositories.AccountRepository;
+import com.swarmer.finance.repositories.BalanceAssertionRepository;
+
+import jakarta.transaction.Transactional;
+
+/**
+ * Keeps balance assertions and derives the corrections they imply. Balances
+ * built from transactions are raw, the balance after an operation is the raw
+ * balance plus the correction of the latest assertion before that operation.
+ * Writing a transaction never touches the assertions.
+ */
+@Service
+public class BalanceAssertionService {
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1, 1, 1, 0, 0);
+    private static final LocalDateTime END_OF_TIME = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    private final BalanceAssertionRepository assertionRepository;
+    private final AccountRepository accountRepository;
+    private final AclService aclService;
+    private final BalanceIndex balanceIndex;
+
+    public BalanceAssertionService(BalanceAssertionRepository assertionRepository,
+            AccountRepository accountRepository, AclService aclService, BalanceIndex balanceIndex) {
+        this.assertionRepository = assertionRepository;
+        this.accountRepository = accountRepository;
+        this.aclService = aclService;
+        this.balanceIndex = balanceIndex;
+    }
+
+    public List<BalanceAssertionDto> getAssertions(Long userId, Long accountId) {
+        var account = getAccount(userId, accountId);
+        return assertionRepository.findByAccountIdOrderByOpdateDesc(accountId).stream()
+                .map(a -> BalanceAssertionDto.fromEntity(a, account))
+                .toList();
+    }
+
+    @Transactional
+    public BalanceAssertionDto saveAssertion(BalanceAssertionDto dto, Long userId) {
+        var account = getAccount(userId, dto.accountId());
+        var assertion = assertBalance(userId, account, dto.opdate(),
+                AccountDto.unsetScale(dto.balance(), account.getScale()));
+        return BalanceAssertionDto.fromEntity(assertion, account);
+    }
+
+    /**
+     * Stores the unscaled balance of the account at the end of opdate, replacing
+     * an assertion at the same time.
+     */
+    @Transactional
+    public BalanceAssertion assertBalance(Long userId, Account account, LocalDateTime opdate, BigDecimal balance) {
+        var assertion = assertionRepository.findByAccountIdAndOpdate(account.getId(), opdate)
+                .orElseGet(BalanceAssertion::new);
+        assertion.setOwnerId(userId);
+        assertion.setAccountId(account.getId());
+        assertion.setOpdate(opdate);
+        assertion.setBalance(balance);
+        assertion.setUpdated(LocalDateTime.now());
+        assertion = assertionRepository.save(assertion);
+        balanceIndex.evict(List.of(account.getId()));
+        return assertion;
+    }
+
+    @Transactional
+    public void deleteAssertion(Long id, Long userId) {
+        var assertion = assertionRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Assertion not found with id " + id));
+        getAccount(userId, assertion.getAccountId());
+        assertionRepository.delete(assertion);
+        balanceIndex.evict(List.of(assertion.getAccountId()));
+    }
+
+    /**
+     * Returns the corrections in effect before {@code to} as balance rows in the
+     * shape of {@link CheckpointService#getBalances}: a positive correction is
+     * an income-like row, a negative one an expense-like row.
+     */
+    public List<TransactionSum> getAdjustments(Collection<Long> accountIds, LocalDateTime to) {
+        if (accountIds.isEmpty()) {
+            return List.of();
+        }
+        var end = to == null ? END_OF_TIME : to;
+        return assertionRepository.findDeltas(accountIds, end, end).stream()
+                .filter(d -> d.getDelta().signum() != 0)
+                .map(d -> d.getDelta().signum() > 0
+                        ? new TransactionSum(null, d.getAccountId(), BigDecimal.ZERO, d.getDelta(), d.getOpdate())
+                        : new TransactionSum(d.getAccountId(), null, d.getDelta().negate(), BigDecimal.ZERO,
+                                d.getOpdate()))
+                .toList();
+    }
+
+    /**
+     * Returns by account the corrections of the assertion in effect at
+     * {@code from} and of all later assertions before {@code to}, ordered by
+     * opdate.
+     */
+    public Map<Long, List<AssertionDelta>> getDeltas(Collection<Long> accountIds, LocalDateTime from,
+            LocalDateTime to) {
+        if (accountIds.isEmpty()) {
+            return Map.of();
+        }
+        return assertionRepository.findDeltas(accountIds, from == null ? BEGINNING : from,
+                to == null ? END_OF_TIME : to).stream()
+                .collect(Collectors.groupingBy(AssertionDelta::getAccountId));
+    }
+
+    /**
+     * Returns the correction of the latest assertion strictly before opdate.
+     */
+    public static BigDecimal deltaBefore(List<AssertionDelta> deltas, LocalDateTime opdate) {
+        var result = BigDecimal.ZERO;
+        if (deltas != null) {
+            for (var d : deltas) {
+                if (!d.getOpdate().isBefore(opdate)) {
+                    break;
+                }
+                result = d.getDelta();
+            }
+        }
+        return result;
+    }
+
+    private Account getAccount(Long userId, Long accountId) {
+        return aclService.getAccessibleAccounts(userId).stream()
+                .filter(a -> a.id().equals(accountId))
+                .findFirst()
+                .flatMap(a -> accountRepository.findById(a.id()))
+                .orElseThrow(() -> new ResourceNotFoundException("Account not found with id " + accountId));
+    }
+}
@@ -0,0 +1,108 @@
+package com.swarmer.finance.services;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+
+import org.springframework.stereotype.Service;
+
+import com.swarmer.finance.dto.AccountBalance;
+
+/**
+ * Process-wide index of current account balances in unscaled minor units,
+ * including the corrections of balance assertions. Entries are loaded on a
+ * miss and evicted on every write to transactions or assertions; accounts
+ * whose totals do not fit into a long are never indexed and always read from
+ * the database. Evictions reach the other instances through
+ * {@link CacheInvalidator} once the write commits.
+ */
+@Service
+public class BalanceIndex {
+    private static final long NO_OPDATE = Long.MIN_VALUE;
+    private static final String REGION = "balances";
+
+    private final LongLongMap debits = new LongLongMap();
+    private final LongLongMap credits = new LongLongMap();
+    private final LongLongMap opdates = new LongLongMap();
+    private final CacheInvalidator cacheInvalidator;
+    private long version;
+
+    public BalanceIndex(CacheInvalidator cacheInvalidator) {
+        this.cacheInvalidator = cacheInvalidator;
+        cacheInvalidator.subscribe(REGION, this::remove, this::clear);
+    }
+
+    /**
+     * Returns the indexed totals of the account or null if it is not indexed.
+     */
+    public synchronized AccountBalance get(Long accountId) {
+        if (!debits.containsKey(accountId)) {
+            return null;
+        }
+        var opdate = opdates.get(accountId, NO_OPDATE);
+        return new AccountBalance(accountId, BigDecimal.valueOf(debits.get(accountId, 0)),
+                BigDecimal.valueOf(credits.get(accountId, 0)), opdate == NO_OPDATE ? null : toOpdate(opdate));
+    }
+
+    /**
+     * Returns the version to pass to {@link #put} for values read from the
+     * database after this call.
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Stores totals read at the given version, unless an eviction happened in
+     * the meantime or the totals overflow a long.
+     */
+    public synchronized void put(AccountBalance balance, long readVersion) {
+        if (readVersion != version) {
+            return;
+        }
+        long debit;
+        long credit;
+        try {
+            debit = balance.debit().longValueExact();
+            credit = balance.credit().longValueExact();
+        } catch (ArithmeticException e) {
+            return;
+        }
+        debits.put(balance.accountId(), debit);
+        credits.put(balance.accountId(), credit);
+        opdates.put(balance.accountId(), balance.opdate() == null ? NO_OPDATE : toMicros(balance.opdate()));
+    }
+
+    public void evict(Collection<Long> accountIds) {
+        TransactionHooks.nowAndAfterCompletion(() -> remove(accountIds));
+        cacheInvalidator.publish(REGION, accountIds);
+    }
+
+    private synchronized void remove(Collection<Long> accountIds) {
+        version++;
+        for (var id : accountIds) {
+            if (id != null) {
+                debits.remove(id);
+                credits.remove(id);
+                opdates.remove(id);
+            }
+        }
+    }
+
+    private synchronized void clear() {
+        version++;
+        debits.clear();
+        credits.clear();
+        opdates.clear();
+    }
+
+    private static long toMicros(LocalDateTime opdate) {
+        return opdate.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + opdate.getNano() / 1_000;
+    }
+
+    private static LocalDateTime toOpdate(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+}
@@ -3,12 +3,13 @@ package com.swarmer.finance.services;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.swarmer.finance.dto.BitcoinWalletBalanceDto;
 import com.swarmer.finance.dto.ImportDto;
-import com.swarmer.finance.models.Transaction;
+import com.swarmer.finance.dto.WalletHistory;
+import com.swarmer.finance.dto.WalletSyncCursor;
 import com.swarmer.finance.models.TransactionType;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.RestClient;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -16,9 +17,6 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Service
 public class BitcoinService {
@@ -27,14 +25,14 @@ public class BitcoinService {
     private static final String API_VERSION = "v1";
     private static final int LIMIT = 2000;
 
-    private final RestTemplate restTemplate;
+    private final RestClient restClient;
     private final String apiUrl;
     private final String apiKey;
 
-    public BitcoinService(
+    public BitcoinService(RestClient blockchainRestClient,
             @Value("${bitcoin.api.url:https://api.blockcypher.com}") String apiUrl,
             @Value("${bitcoin.api.key:}") String apiKey) {
-        this.restTemplate = new RestTemplate();
+        this.restClient = blockchainRestClient;
         this.apiUrl = apiUrl;
         this.apiKey = apiKey;
     }
@@ -54,7 +52,7 @@ public class BitcoinService {
                 url += "?token=" + apiKey;
             }
             // Send the request
-            var response = restTemplate.getForObject(url, JsonNode.class);
+            var response = restClient.get().uri(url).retrieve().body(JsonNode.class);
 
             BigDecimal btcBalance = BigDecimal.ZERO;
             if (response != null) {
@@ -74,10 +72,10 @@ public class BitcoinService {
      * Get Bitcoin transactions for a wallet address
      * 
      * @param address  Bitcoin wallet address
-     * @param lastTransaction last transaction for pagination
-     * @return List of ImportDto with transaction information
+     * @param since   cursor of the last sync, only later blocks are read
+     * @return transaction information and the cursor to continue from
      */
-    public List<ImportDto> getTransactions(String address, Optional<Transaction> lastTransaction) {
+    public WalletHistory getTransactions(String address, WalletSyncCursor since) {
         if (address == null || address.isEmpty()) {
             throw new IllegalArgumentException("Address cannot be null or empty");
         }
@@ -85,16 +83,9 @@ public class BitcoinService {
         try {
             List<ImportDto> result = new ArrayList<>();
             long beforeBlock = -1;
-            long afterBlock = -1;
+            long afterBlock = since.blockHeight() != null ? since.blockHeight() : -1;
             boolean hasMore = true;
-
-            if (lastTransaction != null && lastTransaction.isPresent()) {
-                Pattern pattern = Pattern.compile("block_height: (\\d+)");
-                Matcher matcher = pattern.matcher(lastTransaction.get().getDetails());
-                if (matcher.find()) {
-                    afterBlock = Long.parseLong(matcher.group(1));
-                }
-            }
+            var cursor = since;
 
             while (hasMore) {
                 // Build the URL with pagination parameters
@@ -112,7 +103,7 @@ public class BitcoinService {
                 }
 
                 // Send the request
-                var response = restTemplate.getForObject(url, JsonNode.class);
+                var response = restClient.get().uri(url).retrieve().body(JsonNode.class);
 
                 if (response != null && response.has("txrefs")) {
                     JsonNode transactions = response.get("txrefs");
@@ -127,6 +118,7 @@ public class BitcoinService {
                         Boolean spent = tx.get("spent").asBoolean();
                         LocalDateTime confirmed =LocalDateTime.parse(tx.get("confirmed").asText(), DateTimeFormatter.ISO_DATE_TIME);
                         String txHash = tx.get("tx_hash").asText();
+                        cursor = cursor.advance(beforeBlock, null, txHash);
                         var details = "tx_hash: " + txHash + ", block_height: " + beforeBlock;
 
 
@@ -146,10 +138,12 @@ public class BitcoinService {
                         ));
                     }
                     hasMore = response.has("hasMore") && response.get("hasMore").asBoolean();
+                } else {
+                    hasMore = false;
                 }
             }
 
-            return result;
+            return new WalletHistory(result, cursor);
         } catch (Exception e) {
             throw new RuntimeException("Failed to get Bitcoin transactions: " + e.getMessage(), e);
         }
@@ -0,0 +1,135 @@
+package com.swarmer.finance.services;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Carries evictions of the in-memory caches between the instances sharing the
+ * database. A write publishes the evicted keys with pg_notify inside its
+ * transaction, so they are delivered on commit only, and every instance
+ * listens on a connection of its own and evicts the keys locally. While that
+ * connection is down notifications are lost, so all caches are cleared each
+ * time it is opened.
+ */
+@Service
+public class CacheInvalidator {
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidator.class);
+    private static final String CHANNEL = "cache_invalidation";
+    private static final String ALL = "*";
+    // pg_notify payloads must stay below 8000 bytes
+    private static final int MAX_KEYS_LENGTH = 7000;
+    private static final int POLL_MILLIS = 1000;
+    private static final long RETRY_MILLIS = 5000;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private Thread listener;
+
+    public CacheInvalidator(DataSource dataSource, JdbcTemplate jdbcTemplate) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Registers the cache of a region: evict removes the given keys, clear
+     * removes everything.
+     */
+    public void subscribe(String region, Consumer<Collection<Long>> evict, Runnable clear) {
+        subscriptions.put(region, new Subscription(evict, clear));
+    }
+
+    /**
+     * Tells every instance to evict the keys of the region once the current
+     * transaction commits, or right away outside of a transaction.
+     */
+    public void publish(String region, Collection<Long> keys) {
+        var ids = keys.stream().filter(Objects::nonNull).distinct().map(String::valueOf)
+                .collect(Collectors.joining(","));
+        if (ids.isEmpty()) {
+            return;
+        }
+        var payload = region + ":" + (ids.length() > MAX_KEYS_LENGTH ? ALL : ids);
+        jdbcTemplate.query("select pg_notify(?, ?)", (RowCallbackHandler) rs -> {
+        }, CHANNEL, payload);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        listener = Thread.ofPlatform().daemon().name("cache-invalidation").start(this::listen);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        listener.interrupt();
+    }
+
+    private void listen() {
+        while (running) {
+            try (var connection = dataSource.getConnection(); var statement = connection.createStatement()) {
+                statement.execute("listen " + CHANNEL);
+                // evictions sent while not listening are lost
+                subscriptions.values().forEach(s -> s.clear().run());
+                var notifications = connection.unwrap(PGConnection.class);
+                while (running) {
+                    var received = notifications.getNotifications(POLL_MILLIS);
+                    if (received != null) {
+                        Arrays.stream(received).forEach(n -> receive(n.getParameter()));
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    log.warn("Cache invalidation listener failed, reconnecting", e);
+                    pause();
+                }
+            }
+        }
+    }
+
+    private void receive(String payload) {
+        var separator = payload.indexOf(':');
+        var subscription = separator < 0 ? null : subscriptions.get(payload.substring(0, separator));
+        if (subscription == null) {
+            return;
+        }
+        var keys = payload.substring(separator + 1);
+        if (ALL.equals(keys)) {
+            subscription.clear().run();
+        } else {
+            subscription.evict().accept(Arrays.stream(keys.split(",")).map(Long::valueOf).toList());
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private record Subscription(Consumer<Collection<Long>> evict, Runnable clear) {
+    }
+}
@@ -2,53 +2,77 @@ package com.swarmer.finance.services;
 
 import jakarta.transaction.Transactional;
 
+import org.hibernate.SessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.swarmer.finance.dto.CategoryDto;
+import com.swarmer.finance.dto.CategoryTree;
 import com.swarmer.finance.exceptions.ResourceNotFoundException;
 import com.swarmer.finance.models.Category;
-import com.swarmer.finance.repositories.AclRepository;
 import com.swarmer.finance.repositories.CategoryRepository;
+import com.swarmer.finance.repositories.MonthlyRollupRepository;
 import com.swarmer.finance.repositories.RuleRepository;
 import com.swarmer.finance.repositories.TransactionRepository;
 
+import jakarta.persistence.EntityManagerFactory;
+
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
-import java.util.stream.LongStream;
 
 @Service
 public class CategoryService {
+    private static final String REGION = "categories";
 
     private final CategoryRepository categoryRepository;
-    private final AclRepository aclRepository;
+    private final AclService aclService;
     private final TransactionRepository transactionRepository;
     private final RuleRepository ruleRepository;
+    private final MonthlyRollupRepository rollupRepository;
+    private final CacheInvalidator cacheInvalidator;
+    private final SessionFactory sessionFactory;
+    // snapshots by sorted owner ids
+    private final Map<List<Long>, CategoryTree> trees = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
 
     @Autowired
-    public CategoryService(CategoryRepository categoryRepository, AclRepository aclRepository,
-            TransactionRepository transactionRepository, RuleRepository ruleRepository) {
+    public CategoryService(CategoryRepository categoryRepository, AclService aclService,
+            TransactionRepository transactionRepository, RuleRepository ruleRepository,
+            MonthlyRollupRepository rollupRepository, CacheInvalidator cacheInvalidator,
+            EntityManagerFactory entityManagerFactory) {
         this.categoryRepository = categoryRepository;
-        this.aclRepository = aclRepository;
+        this.aclService = aclService;
         this.transactionRepository = transactionRepository;
         this.ruleRepository = ruleRepository;
+        this.rollupRepository = rollupRepository;
+        this.cacheInvalidator = cacheInvalidator;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        // trees are built from cached categories, which can be stale where
+        // the change was not made
+        cacheInvalidator.subscribe(REGION, ownerIds -> {
+            evictEntities();
+            removeTrees(ownerIds);
+        }, () -> {
+            evictEntities();
+            clearTrees();
+        });
     }
 
     // get all unic categories that the user has access to
     @Transactional
     public List<CategoryDto> getAllCategories(Long userId) {
-        // get all user ids that the user has access to
-        var ownerIds = LongStream.concat(LongStream.of(userId), aclRepository.findByUserIdOrderByGroupId(userId)
-                .stream().mapToLong(acl -> acl.getGroup().getOwner().getId())).distinct().boxed().toList();
         var comparator = Comparator.comparing(CategoryDto::type)
                 .thenComparingInt(c -> c.parentId() == null ? 0 : 1)
                 .thenComparing((c1, c2) -> c1.fullName().compareToIgnoreCase(c2.fullName()))
                 .thenComparingInt(c -> userId.equals(c.ownerId()) ? 0 : 1);
         // merge all categories with the same name
-        return categoryRepository.findByOwnerIdIsNullOrOwnerIdIn(ownerIds).stream()
-                .map(CategoryDto::fromEntity)
+        return getTree(userId).categories().stream()
                 .sorted(comparator)
                 .collect(Collectors.toMap(CategoryDto::fullName, c -> c, (c1, c2) -> c1))
                 .values().stream()
@@ -79,6 +103,7 @@ public class CategoryService {
         var existing = categoryRepository.findAllByOwnerIdAndParentIdAndNameIgnoreCase(userId, parent.getId(),
                 dto.name());
         if (existing.isEmpty()) {
+            evictTrees(userId);
             return categoryRepository.save(new Category(null, userId, parent, dto.name(),
                     LocalDateTime.now(), LocalDateTime.now()));
         }
@@ -89,6 +114,7 @@ public class CategoryService {
     @Transactional
     public CategoryDto saveCategory(CategoryDto dto, Long userId) {
         Category category = getCategory(dto, userId);
+        evictTrees(userId);
         if (category.getId().equals(dto.id())) {
             category.setName(dto.name());
             category.setUpdated(LocalDateTime.now());
@@ -100,6 +126,7 @@ public class CategoryService {
                 .filter(c -> !c.getId().equals(category.getId()))
                 .forEach(d -> {
                     transactionRepository.replaceCategoryId(d.getId(), category.getId());
+                    rollupRepository.replaceCategoryId(d.getId(), category.getId());
                     ruleRepository.replaceCategoryId(d.getId(), category.getId());
                     categoryRepository.deleteById(d.getId());
                 });
@@ -114,9 +141,11 @@ public class CategoryService {
         if (!original.getOwnerId().equals(userId) || original.getParent() == null) {
             throw new IllegalArgumentException();
         }
+        evictTrees(userId);
         // replace all references to this category with the parent
         categoryRepository.replaceParentId(id, original.getParent().getId());
         transactionRepository.replaceCategoryId(id, original.getParent().getId());
+        rollupRepository.replaceCategoryId(id, original.getParent().getId());
         if (original.getParent().getId() != null) {
             ruleRepository.replaceCategoryId(id, original.getParent().getId());
         } else {
@@ -129,15 +158,65 @@ public class CategoryService {
 
     @Transactional
     public List<Long> getCategoriesFilter(Long userId, Long categoryId) {
-        var ownerIds = LongStream.concat(LongStream.of(userId), aclRepository.findByUserIdOrderByGroupId(userId)
-                .stream().mapToLong(acl -> acl.getGroup().getOwner().getId())).distinct().boxed().toList();
-        var categories = categoryRepository.findByOwnerIdIsNullOrOwnerIdIn(ownerIds).stream()
-                .map(CategoryDto::fromEntity).toList();
-        var category = categories.stream().filter(c -> c.id().equals(categoryId)).findFirst().orElseThrow();
-        return categories.stream()
-                .filter(c -> c.type() == category.type() && (c.id().equals(categoryId)
-                        || c.fullName().toLowerCase().startsWith(category.fullName().toLowerCase() + " / ")))
-                .map(CategoryDto::id)
-                .toList();
+        var tree = getTree(userId);
+        return tree.aliases(tree.find(categoryId).orElseThrow());
+    }
+
+    /**
+     * Returns the snapshot of the categories visible to the user, building it
+     * on first use for the user's set of owners.
+     */
+    public CategoryTree getTree(Long userId) {
+        var ownerIds = aclService.getOwnerIds(userId).stream().sorted().toList();
+        var tree = trees.get(ownerIds);
+        if (tree != null) {
+            return tree;
+        }
+        var readVersion = version.get();
+        tree = CategoryTree.of(readVersion, categoryRepository.findByOwnerIdIsNullOrOwnerIdIn(ownerIds));
+        // keep only what was read without a change in the meantime
+        synchronized (version) {
+            if (readVersion == version.get()) {
+                trees.put(ownerIds, tree);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Returns the ids of the categories visible to the user whose name matches
+     * the upper case pattern.
+     */
+    public List<Long> findIdsByName(Long userId, String pattern) {
+        return categoryRepository.findIdsByNameLike(pattern, aclService.getOwnerIds(userId));
+    }
+
+    /**
+     * Evicts the trees that include the owner's categories, here and on the
+     * other instances once the write commits.
+     */
+    private void evictTrees(Long ownerId) {
+        TransactionHooks.nowAndAfterCompletion(() -> removeTrees(List.of(ownerId)));
+        cacheInvalidator.publish(REGION, List.of(ownerId));
+    }
+
+    private void removeTrees(Collection<Long> ownerIds) {
+        synchronized (version) {
+            version.incrementAndGet();
+            trees.keySet().removeIf(key -> key.stream().anyMatch(ownerIds::contains));
+        }
+    }
+
+    private void clearTrees() {
+        synchronized (version) {
+            version.incrementAndGet();
+            trees.clear();
+        }
+    }
+
+    private void evictEntities() {
+        var regions = sessionFactory.getCache();
+        regions.evictEntityData(Category.class);
+        regions.evictDefaultQueryRegion();
     }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.swarmer.finance.services;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Service;
+
+import com.swarmer.finance.dto.TransactionSum;
+import com.swarmer.finance.repositories.BalanceCheckpointRepository;
+import com.swarmer.finance.repositories.MonthlyRollupRepository;
+
+import jakarta.transaction.Transactional;
+
+/**
+ * Maintains monthly per-account balance checkpoints, so balances can be read
+ * without aggregating the whole transaction history, and the monthly rollups
+ * by account pair and category the summaries are built from.
+ */
+@Service
+public class CheckpointService {
+    private static final LocalDate BEGINNING = LocalDate.of(1, 1, 1);
+
+    private final BalanceCheckpointRepository checkpointRepository;
+    private final MonthlyRollupRepository rollupRepository;
+    private final BalanceIndex balanceIndex;
+
+    public CheckpointService(BalanceCheckpointRepository checkpointRepository,
+            MonthlyRollupRepository rollupRepository, BalanceIndex balanceIndex) {
+        this.checkpointRepository = checkpointRepository;
+        this.rollupRepository = rollupRepository;
+        this.balanceIndex = balanceIndex;
+    }
+
+    /**
+     * Recalculates checkpoints and rollups of the accounts for the month of
+     * {@code from} and all later months. Must be called after every write to
+     * transactions, in the transaction of the write. Concurrent refreshes of an
+     * account wait for each other, and each one reads what the previous one
+     * committed, so no account gets a checkpoint month twice. The rollups of
+     * a transfer are also rebuilt by refreshes of its other end, which hold a
+     * different lock; a write that changes the transfer refreshes both ends,
+     * so such refreshes compute the same totals and the later insert just
+     * replaces the row of the earlier one.
+     *
+     * @param accountIds the accounts affected by the write, nulls are ignored
+     * @param from       the earliest operation date affected, null to rebuild the whole history
+     */
+    @Transactional
+    public void refresh(Collection<Long> accountIds, LocalDateTime from) {
+        var ids = accountIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) {
+            return;
+        }
+        var period = from == null ? BEGINNING : from.toLocalDate().withDayOfMonth(1);
+        checkpointRepository.lockAccounts(ids);
+        checkpointRepository.deleteByAccountIds(ids, period);
+        checkpointRepository.insertByAccountIds(ids, period);
+        rollupRepository.deleteByAccountIds(ids, period);
+        rollupRepository.insertByAccountIds(ids, period);
+        balanceIndex.evict(ids);
+    }
+
+    @Transactional
+    public void rebuild(Collection<Long> accountIds) {
+        refresh(accountIds, null);
+    }
+
+    /**
+     * Returns balances accumulated in checkpoints. When {@code to} is set, only
+     * months before the month of {@code to} are included and the caller has to
+     * aggregate the tail from the start of that month.
+     *
+     * @return per account one expense-like row with the debit total and one
+     *         income-like row with the credit total
+     */
+    public List<TransactionSum> getBalances(Collection<Long> accountIds, LocalDateTime to) {
+        if (accountIds.isEmpty()) {
+            return List.of();
+        }
+        var sums = to == null ? checkpointRepository.sumByAccountIds(accountIds)
+                : checkpointRepository.sumByAccountIdsBefore(accountIds, startOfMonth(to).toLocalDate());
+        return sums.stream()
+                .flatMap(s -> Stream.of(
+                        new TransactionSum(s.accountId(), null, s.debit(), BigDecimal.ZERO, s.opdate()),
+                        new TransactionSum(null, s.accountId(), BigDecimal.ZERO, s.credit(), s.opdate())))
+                .toList();
+    }
+
+    public static LocalDateTime startOfMonth(LocalDateTime opdate) {
+        return opdate.toLocalDate().withDayOfMonth(1).atStartOfDay();
+    }
+}
@@ -0,0 +1,176 @@
+package com.swarmer.finance.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swarmer.finance.dto.AccountDto;
+import com.swarmer.finance.dto.AssertionDelta;
+import com.swarmer.finance.dto.CategoryDto;
+import com.swarmer.finance.dto.TransactionExportDto;
+import com.swarmer.finance.dto.TransactionRow;
+import com.swarmer.finance.dto.TransactionSum;
+import com.swarmer.finance.models.Account;
+import com.swarmer.finance.models.Category;
+import com.swarmer.finance.models.TransactionType;
+
+import jakarta.persistence.EntityManager;
+
+@Service
+public class ExportService {
+    private static final String[] CSV_HEADER = { "id", "opdate", "type", "account", "debit", "recipient", "credit",
+            "category", "currency", "party", "details", "accountBalance", "recipientBalance" };
+
+    private final TransactionService transactionService;
+    private final AclService aclService;
+    private final CategoryService categoryService;
+    private final BalanceAssertionService assertionService;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    public ExportService(TransactionService transactionService, AclService aclService,
+            CategoryService categoryService, BalanceAssertionService assertionService, EntityManager entityManager, ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager) {
+        this.transactionService = transactionService;
+        this.aclService = aclService;
+        this.categoryService = categoryService;
+        this.assertionService = assertionService;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Writes the filtered transactions to the stream in ascending order while
+     * they are read from the cursor, so memory does not grow with the number of
+     * rows. Running balances are carried forward for the exported accounts when
+     * requested and the result is not narrowed by search or category.
+     */
+    public void exportTransactions(Long userId, Collection<Long> accountIdsFilter, String search, Long categoryId,
+            String currency, LocalDateTime from, LocalDateTime to, boolean csv, boolean balances,
+            OutputStream out) throws IOException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    export(userId, accountIdsFilter, search, categoryId, currency, from, to, csv, balances, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void export(Long userId, Collection<Long> accountIdsFilter, String search, Long categoryId,
+            String currency, LocalDateTime from, LocalDateTime to, boolean csv, boolean balances,
+            OutputStream out) throws IOException {
+        var accounts = new HashMap<Long, Account>();
+        aclService.getAccounts(userId).stream()
+                .filter(a -> currency == null || currency.isBlank() || currency.equals(a.getCurrency()))
+                .filter(a -> accountIdsFilter == null || accountIdsFilter.isEmpty()
+                        || accountIdsFilter.contains(a.getId()))
+                .forEach(a -> accounts.put(a.getId(), a));
+        var writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        var printer = csv ? new CSVPrinter(writer, CSVFormat.DEFAULT.builder().setHeader(CSV_HEADER).build()) : null;
+        if (!accounts.isEmpty()) {
+            var calcBalances = balances && (search == null || search.isBlank()) && categoryId == null;
+            var deltas = calcBalances ? assertionService.getDeltas(accounts.keySet(), from, to)
+                    : Map.<Long, List<AssertionDelta>>of();
+            var current = calcBalances ? startBalances(accounts, from, deltas) : Map.<Long, BigDecimal>of();
+            var names = new HashMap<Long, String>();
+            var tree = categoryService.getTree(userId);
+            var categories = new HashMap<Long, CategoryDto>();
+            Function<Long, Account> account = id -> id == null ? null
+                    : accounts.computeIfAbsent(id, i -> entityManager.find(Account.class, i));
+            try (var rows = transactionService.streamTransactions(userId, accounts.keySet(), search, categoryId,
+                    from, to)) {
+                for (var it = rows.iterator(); it.hasNext();) {
+                    var row = it.next();
+                    var category = row.categoryId() == null ? null
+                            : categories.computeIfAbsent(row.categoryId(),
+                                    i -> tree.toDto(entityManager.find(Category.class, i)));
+                    var dto = toDto(row, account.apply(row.accountId()), account.apply(row.recipientId()),
+                            category, names, current, deltas);
+                    if (printer != null) {
+                        printer.printRecord(dto.id(), dto.opdate(), dto.type(), dto.account(), dto.debit(),
+                                dto.recipient(), dto.credit(), dto.category(), dto.currency(), dto.party(),
+                                dto.details(), dto.accountBalance(), dto.recipientBalance());
+                    } else {
+                        writer.write(objectMapper.writeValueAsString(dto));
+                        writer.write('\n');
+                    }
+                }
+            }
+        }
+        if (printer != null) {
+            printer.flush();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Returns raw balances right before {@code from}, without the correction of
+     * the assertion in effect, which is added back per row.
+     */
+    private Map<Long, BigDecimal> startBalances(Map<Long, Account> accounts, LocalDateTime from,
+            Map<Long, List<AssertionDelta>> deltas) {
+        var result = new HashMap<Long, BigDecimal>();
+        accounts.values().forEach(a -> result.put(a.getId(), a.getStartBalance()));
+        if (from != null) {
+            var sums = transactionService.getBalances(accounts.keySet(), null, from, null);
+            TransactionSum.net(sums).forEach((id, balance) -> result.merge(id, balance, BigDecimal::add));
+            deltas.forEach((id, d) -> result.merge(id, BalanceAssertionService.deltaBefore(d, from).negate(),
+                    BigDecimal::add));
+        }
+        return result;
+    }
+
+    private static TransactionExportDto toDto(TransactionRow row, Account account, Account recipient,
+            CategoryDto category, Map<Long, String> names, Map<Long, BigDecimal> current,
+            Map<Long, List<AssertionDelta>> deltas) {
+        var type = account != null && recipient != null ? TransactionType.TRANSFER
+                : (category == null ? (account == null ? TransactionType.INCOME : TransactionType.EXPENSE)
+                        : category.type());
+        var dscale = account != null ? account.getScale() : (recipient != null ? recipient.getScale() : 2);
+        var cscale = recipient != null ? recipient.getScale() : dscale;
+        BigDecimal accountBalance = null;
+        BigDecimal recipientBalance = null;
+        if (account != null && current.containsKey(account.getId())) {
+            accountBalance = current.merge(account.getId(), row.debit().negate(), BigDecimal::add)
+                    .add(BalanceAssertionService.deltaBefore(deltas.get(account.getId()), row.opdate()));
+        }
+        if (recipient != null && current.containsKey(recipient.getId())) {
+            recipientBalance = current.merge(recipient.getId(), row.credit(), BigDecimal::add)
+                    .add(BalanceAssertionService.deltaBefore(deltas.get(recipient.getId()), row.opdate()));
+        }
+        return new TransactionExportDto(row.id(), row.opdate(), type, name(account, names),
+                AccountDto.setScale(row.debit(), dscale), name(recipient, names),
+                AccountDto.setScale(row.credit(), cscale), category == null ? null : category.fullName(),
+                row.currency(), row.party(), row.details(),
+                account == null ? null : AccountDto.setScale(accountBalance, account.getScale()),
+                recipient == null ? null : AccountDto.setScale(recipientBalance, recipient.getScale()));
+    }
+
+    private static String name(Account account, Map<Long, String> names) {
+        return account == null ? null : names.computeIfAbsent(account.getId(), id -> AccountDto.getFullName(account));
+    }
+}
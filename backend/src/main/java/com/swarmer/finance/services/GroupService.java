@@ -9,6 +9,7 @@ import java.util.stream.Stream;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import com.swarmer.finance.dto.AccountBalances;
 import com.swarmer.finance.dto.AccountDto;
 import com.swarmer.finance.dto.GroupDto;
 import com.swarmer.finance.exceptions.ResourceNotFoundException;
@@ -28,13 +29,15 @@ public class GroupService {
     private final AclRepository aclRepository;
     private final UserRepository userRepository;
     private final TransactionService transactionService;
+    private final AclService aclService;
 
     public GroupService(AccountGroupRepository groupRepository, AclRepository aclRepository,
-            UserRepository userRepository, TransactionService transactionService) {
+            UserRepository userRepository, TransactionService transactionService, AclService aclService) {
         this.groupRepository = groupRepository;
         this.aclRepository = aclRepository;
         this.userRepository = userRepository;
         this.transactionService = transactionService;
+        this.aclService = aclService;
     }
 
     @Transactional
@@ -48,19 +51,20 @@ public class GroupService {
                 .flatMap(group -> group.getAccounts().stream())
                 .map(account -> account.getId())
                 .toList();
-        var balances = transactionService.getBalances(accList, null, opdate, null);
-        var allGroups = userGroups.stream().map(g -> GroupDto.fromEntity(g, userId, balances))
+        var balances = transactionService.getAccountBalances(accList, opdate);
+        var views = aclService.getAccountViews(userId);
+        var allGroups = userGroups.stream().map(g -> GroupDto.fromEntity(g, userId, balances, views))
                 .filter(GroupDto::owner).collect(Collectors.toList());
         allGroups.addAll(userGroups.stream()
-                .map(g -> GroupDto.fromEntity(g, userId, balances))
+                .map(g -> GroupDto.fromEntity(g, userId, balances, views))
                 .filter(GroupDto::coowner)
                 .toList());
         allGroups.addAll(sharedGroups.stream()
-                .map(g -> GroupDto.fromEntity(g, userId, balances))
+                .map(g -> GroupDto.fromEntity(g, userId, balances, views))
                 .filter(GroupDto::coowner)
                 .toList());
         allGroups.addAll(sharedGroups.stream()
-                .map(g -> GroupDto.fromEntity(g, userId, balances))
+                .map(g -> GroupDto.fromEntity(g, userId, balances, views))
                 .filter(GroupDto::shared)
                 .toList());
         return allGroups;
@@ -71,8 +75,8 @@ public class GroupService {
         var group = groupRepository.findById(groupId)
                 .orElseThrow(() -> new ResourceNotFoundException("Resource not found with id: " + groupId));
         var accList = group.getAccounts().stream().map(account -> account.getId()).toList();
-        var balances = transactionService.getBalances(accList, null, null, null);
-        return GroupDto.fromEntity(group, userId, balances);
+        var balances = transactionService.getAccountBalances(accList, null);
+        return GroupDto.fromEntity(group, userId, balances, aclService.getAccountViews(userId));
     }
 
     @Transactional
@@ -102,7 +106,8 @@ public class GroupService {
             return acl;
         }).toList());
         groupRepository.save(group);
-        return GroupDto.fromEntity(group, userId, List.of());
+        aclService.evict(group);
+        return GroupDto.fromEntity(group, userId, AccountBalances.EMPTY);
     }
 
     @Transactional
@@ -120,27 +125,22 @@ public class GroupService {
         } else {
             group.setName(dto.fullName());
         }
+        // users losing access are evicted before the permissions change
+        aclService.evict(group);
         var accList = group.getAccounts().stream().map(account -> account.getId()).toList();
-        var balances = transactionService.getBalances(accList, null, null, null);
+        var balances = transactionService.getAccountBalances(accList, null);
         if (admin) {
             dto.accounts().forEach(a -> {
                 var startBalance = AccountDto.unsetScale(a.startBalance(), a.scale());
                 if (a.id() != null && a.id() != 0) {
                     var account = group.getAccounts().stream().filter(acc -> acc.getId().equals(a.id()))
                             .findFirst().orElseThrow();
-                    if (a.deleted() && balances.stream()
-                            .noneMatch(b -> a.id().equals(b.accountId()) || a.id().equals(b.recipientId()))) {
+                    if (a.deleted() && !balances.hasHistory(a.id())) {
                         group.getAccounts().remove(account);
                     } else {
                         if (a.deleted()) {
                             // Check if account has non-zero balance
-                            var debit = balances.stream().filter(b -> a.id().equals(b.accountId()))
-                                    .map(b -> b.debit())
-                                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-                            var credit = balances.stream().filter(b -> a.id().equals(b.recipientId()))
-                                    .map(b -> b.credit())
-                                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-                            var balance = startBalance.add(credit).subtract(debit);
+                            var balance = balances.balance(a.id(), startBalance);
                             if (!balance.equals(BigDecimal.ZERO)) {
                                 if (force) {
                                     // Force delete all transactions for this account
@@ -199,7 +199,9 @@ public class GroupService {
             });
         }
         group.setUpdated(LocalDateTime.now());
-        return GroupDto.fromEntity(groupRepository.save(group), userId, balances);
+        var saved = groupRepository.save(group);
+        aclService.evict(saved);
+        return GroupDto.fromEntity(saved, userId, balances);
     }
 
     @Transactional
@@ -211,9 +213,10 @@ public class GroupService {
                 throw new RuntimeException("Not owner");
             }
         }
+        aclService.evict(group);
         var accList = group.getAccounts().stream().map(account -> account.getId()).toList();
-        var balances = transactionService.getBalances(accList, null, null, null);
-        if (balances.isEmpty()) {
+        var balances = transactionService.getAccountBalances(accList, null);
+        if (accList.stream().noneMatch(balances::hasHistory)) {
             groupRepository.delete(group);
             return;
         }
@@ -31,7 +31,6 @@ import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 
 import com.swarmer.finance.dto.AccountDto;
-import com.swarmer.finance.dto.CategoryDto;
 import com.swarmer.finance.dto.ImportDto;
 import com.swarmer.finance.dto.RuleDto;
 import com.swarmer.finance.models.Account;
@@ -48,19 +47,22 @@ public class ImportService {
     private final TransactionService transactionService;
     private final CategoryService categoryService;
     private final RuleRepository ruleRepository;
+    private final AclService aclService;
 
     public ImportService(TransactionService transactionService, CategoryService categoryService,
-            RuleRepository ruleRepository) {
+            RuleRepository ruleRepository, AclService aclService) {
         this.transactionService = transactionService;
         this.categoryService = categoryService;
         this.ruleRepository = ruleRepository;
+        this.aclService = aclService;
 
     }
 
     @Transactional
     public List<RuleDto> getRules(Long userId) {
+        var categories = categoryService.getTree(userId);
         return ruleRepository.findAllByOwnerId(userId).stream()
-                .map(RuleDto::fromEntity)
+                .map(r -> RuleDto.fromEntity(r, categories))
                 .toList();
     }
 
@@ -72,7 +74,7 @@ public class ImportService {
         rule.setConditionValue(ruleDto.conditionValue());
         rule.setCategory(categoryService.getCategory(ruleDto.category(), userId));
         rule = ruleRepository.save(rule);
-        return RuleDto.fromEntity(rule);
+        return RuleDto.fromEntity(rule, categoryService.getTree(userId));
     }
 
     @Transactional
@@ -83,7 +85,7 @@ public class ImportService {
         rule.setCategory(categoryService.getCategory(ruleDto.category(), userId));
         rule.setUpdated(LocalDateTime.now());
         rule = ruleRepository.save(rule);
-        return RuleDto.fromEntity(rule);
+        return RuleDto.fromEntity(rule, categoryService.getTree(userId));
     }
 
     @Transactional
@@ -117,8 +119,10 @@ public class ImportService {
         var minOpdate = records.stream().map(r -> r.getOpdate()).min((a, b) -> a.compareTo(b)).orElse(null);
         var transactions = transactionService.queryTransactions(userId, List.of(accountId), null, null, minOpdate, null,
                 0, 0);
-        var scale = transactions.size() > 0 ? (transactions.get(0).getAccount() == null ? transactions.get(0).getRecipient().getScale() : transactions.get(0).getAccount().getScale()) : 2;
+        var account = aclService.getAccountViews(userId).get(accountId);
+        var scale = account == null ? 2 : account.scale();
         var rules = getRules(userId);
+        var categories = categoryService.getTree(userId);
         var rmap = rules.stream()
                 .collect(Collectors.groupingBy(rule -> Pair.of(rule.conditionType(), rule.category().type())));
         records.forEach(r -> {
@@ -170,7 +174,7 @@ public class ImportService {
             if (transaction != null) {
                 r.setId(transaction.getId());
                 r.setSelected(false);
-                r.setCategory(CategoryDto.fromEntity(transaction.getCategory()));
+                r.setCategory(categories.toDto(transaction.getCategory()));
                 transactions.remove(transaction);
             } else {
                 r.setSelected(true);
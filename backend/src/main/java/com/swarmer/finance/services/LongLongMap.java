@@ -0,0 +1,103 @@
+package com.swarmer.finance.services;
+
+/**
+ * Open addressing hash map from long to long with linear probing, so lookups
+ * neither box keys nor allocate entries. Key 0 marks a free slot and cannot
+ * be stored. Not thread safe.
+ */
+final class LongLongMap {
+    private static final long FREE = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    LongLongMap() {
+        keys = new long[MIN_CAPACITY];
+        values = new long[MIN_CAPACITY];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(long key) {
+        return keys[indexOf(key)] != FREE;
+    }
+
+    long get(long key, long defaultValue) {
+        var index = indexOf(key);
+        return keys[index] == FREE ? defaultValue : values[index];
+    }
+
+    void put(long key, long value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        var index = indexOf(key);
+        if (keys[index] == FREE) {
+            keys[index] = key;
+            size++;
+        }
+        values[index] = value;
+        if (size * 4 >= keys.length * 3) {
+            resize(keys.length * 2);
+        }
+    }
+
+    void remove(long key) {
+        var index = indexOf(key);
+        if (keys[index] == FREE) {
+            return;
+        }
+        // shift back the following entries of the probe sequence instead of
+        // leaving a tombstone
+        var mask = keys.length - 1;
+        var next = (index + 1) & mask;
+        while (keys[next] != FREE) {
+            var home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - index) & mask)) {
+                keys[index] = keys[next];
+                values[index] = values[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[index] = FREE;
+        size--;
+    }
+
+    void clear() {
+        keys = new long[MIN_CAPACITY];
+        values = new long[MIN_CAPACITY];
+        size = 0;
+    }
+
+    private int indexOf(long key) {
+        var mask = keys.length - 1;
+        var index = slot(key);
+        while (keys[index] != FREE && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private int slot(long key) {
+        var hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (keys.length - 1);
+    }
+
+    private void resize(int capacity) {
+        var oldKeys = keys;
+        var oldValues = values;
+        keys = new long[capacity];
+        values = new long[capacity];
+        size = 0;
+        for (var i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.swarmer.finance.services;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+final class TransactionHooks {
+    private TransactionHooks() {
+    }
+
+    /**
+     * Runs the action now and, when called inside a transaction, once more after
+     * it completes. Used to evict in-memory state, so values read by concurrent
+     * requests before the commit are not kept.
+     */
+    static void nowAndAfterCompletion(Runnable action) {
+        action.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.swarmer.finance.services;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -8,57 +9,143 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.criteria.JpaRoot;
+import org.hibernate.query.sqm.tree.SqmJoinType;
 import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 
+import com.swarmer.finance.dto.AccessibleAccount;
+import com.swarmer.finance.dto.AccountBalance;
+import com.swarmer.finance.dto.AccountBalances;
 import com.swarmer.finance.dto.AccountDto;
+import com.swarmer.finance.dto.AssertionDelta;
+import com.swarmer.finance.dto.BalanceAssertionDto;
 import com.swarmer.finance.dto.CategoryDto;
 import com.swarmer.finance.dto.CategorySum;
+import com.swarmer.finance.dto.CategoryTree;
+import com.swarmer.finance.dto.DeletedTransactions;
 import com.swarmer.finance.dto.ImportDto;
 import com.swarmer.finance.dto.Summary;
+import com.swarmer.finance.dto.TransactionCursor;
 import com.swarmer.finance.dto.TransactionDto;
+import com.swarmer.finance.dto.TransactionPage;
+import com.swarmer.finance.dto.TransactionRow;
 import com.swarmer.finance.dto.TransactionSum;
+import com.swarmer.finance.exceptions.ResourceNotFoundException;
 import com.swarmer.finance.models.Account;
 import com.swarmer.finance.models.Category;
+import com.swarmer.finance.models.CategoryClosure;
+import com.swarmer.finance.models.MonthlyRollup;
+import com.swarmer.finance.models.Posting;
 import com.swarmer.finance.models.Transaction;
 import com.swarmer.finance.models.TransactionType;
+import com.swarmer.finance.repositories.AccountRepository;
+import com.swarmer.finance.repositories.PostingRepository;
 import com.swarmer.finance.repositories.TransactionRepository;
 
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.AbstractQuery;
+import jakarta.persistence.criteria.CompoundSelection;
 import jakarta.persistence.criteria.CriteriaBuilder;
-import jakarta.persistence.criteria.JoinType;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.transaction.Transactional;
 
 @Service
 public class TransactionService {
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private final TransactionRepository transactionRepository;
     private final AclService aclService;
     private final CategoryService categoryService;
+    private final CheckpointService checkpointService;
+    private final BalanceAssertionService assertionService;
+    private final BalanceIndex balanceIndex;
+    private final PostingRepository postingRepository;
+    private final AccountRepository accountRepository;
     private final EntityManager entityManager;
 
     public TransactionService(TransactionRepository transactionRepository, AclService aclService,
-            CategoryService categoryService, EntityManager entityManager) {
+            CategoryService categoryService, CheckpointService checkpointService,
+            BalanceAssertionService assertionService, BalanceIndex balanceIndex,
+            PostingRepository postingRepository, AccountRepository accountRepository,
+            EntityManager entityManager) {
         this.transactionRepository = transactionRepository;
+        this.postingRepository = postingRepository;
+        this.accountRepository = accountRepository;
         this.aclService = aclService;
         this.categoryService = categoryService;
+        this.checkpointService = checkpointService;
+        this.assertionService = assertionService;
+        this.balanceIndex = balanceIndex;
         this.entityManager = entityManager;
     }
 
+    /**
+     * Returns balances of the accounts before the given operation. Balances from
+     * the beginning of history are read from checkpoints, only the tail of the
+     * last month is aggregated from transactions, and the corrections implied by
+     * balance assertions are added on top.
+     */
     public List<TransactionSum> getBalances(Collection<Long> accList, LocalDateTime from, LocalDateTime to, Long id) {
-        return getBalances(null, accList, null, null, from, to, id);
+        if (from != null) {
+            return getBalances(null, accList, null, null, from, to, id);
+        }
+        var balances = Stream.concat(checkpointService.getBalances(accList, to).stream(),
+                assertionService.getAdjustments(accList, to).stream());
+        if (to == null) {
+            return balances.toList();
+        }
+        var tail = getBalances(null, accList, null, null, CheckpointService.startOfMonth(to), to, id);
+        return Stream.concat(balances, tail.stream()).toList();
+    }
+
+    /**
+     * Returns balances of the accounts before {@code to}. Current balances are
+     * served from the balance index, only accounts missing from it are read
+     * from the database.
+     */
+    public AccountBalances getAccountBalances(Collection<Long> accList, LocalDateTime to) {
+        if (to != null) {
+            return AccountBalances.of(getBalances(accList, null, to, null));
+        }
+        Map<Long, AccountBalance> result = new HashMap<>();
+        var misses = new ArrayList<Long>();
+        for (var id : accList) {
+            var balance = balanceIndex.get(id);
+            if (balance != null) {
+                result.put(id, balance);
+            } else {
+                misses.add(id);
+            }
+        }
+        if (!misses.isEmpty()) {
+            var version = balanceIndex.version();
+            var loaded = AccountBalances.of(getBalances(misses, null, null, null));
+            for (var id : misses) {
+                var balance = Optional.ofNullable(loaded.get(id))
+                        .orElseGet(() -> new AccountBalance(id, BigDecimal.ZERO, BigDecimal.ZERO, null));
+                balanceIndex.put(balance, version);
+                result.put(id, balance);
+            }
+        }
+        return new AccountBalances(result);
     }
 
     public List<TransactionSum> getBalances(Long userId, Collection<Long> accList, String search, Long categoryId, LocalDateTime from, LocalDateTime to, Long id) {
         var builder = entityManager.getCriteriaBuilder();
         var criteriaQuery = builder.createQuery(TransactionSum.class);
         var root = criteriaQuery.from(Transaction.class);
-        var where = builder.or(root.get("account").get("id").in(accList), root.get("recipient").get("id").in(accList));
-        where = appendSearchCriteria(search, builder, root, where);
-        where = appendCategoryCriteria(userId, categoryId, builder, root, where);
+        var where = inAccounts(criteriaQuery, builder, root, accList, from, to);
+        where = appendSearchCriteria(userId, search, builder, root, where);
+        where = appendCategoryCriteria(criteriaQuery, userId, categoryId, builder, root, where);
         if (from != null) {
             var greaterThanOrEqualTo = builder.greaterThanOrEqualTo(root.<LocalDateTime>get("opdate"), from);
             where = builder.and(where, greaterThanOrEqualTo);
@@ -81,107 +168,283 @@ public class TransactionService {
         return entityManager.createQuery(criteriaQuery).getResultList();
     }
 
+    /**
+     * Same as getBalances without search, but whole months are read from the
+     * monthly rollups and only the partial months at the edges of the range are
+     * aggregated from transactions.
+     */
+    private List<TransactionSum> getRollupBalances(Long userId, Collection<Long> accList, Long categoryId,
+            LocalDateTime from, LocalDateTime to) {
+        return summaryRanges(from, to).stream()
+                .flatMap(r -> r.rollup() ? sumRollups(userId, accList, categoryId, r).stream()
+                        : getBalances(userId, accList, null, categoryId, r.from(), r.to(), null).stream())
+                .toList();
+    }
+
+    private List<TransactionSum> sumRollups(Long userId, Collection<Long> accList, Long categoryId,
+            SummaryRange range) {
+        var builder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = builder.createQuery(TransactionSum.class);
+        var root = criteriaQuery.from(MonthlyRollup.class);
+        var where = builder.or(root.get("account").get("id").in(accList),
+                root.get("recipient").get("id").in(accList));
+        where = appendCategoryCriteria(criteriaQuery, userId, categoryId, builder, root, where);
+        where = appendRangeCriteria(builder, root, range, where);
+        criteriaQuery.multiselect(root.get("account").get("id"), root.get("recipient").get("id"),
+                builder.sum(root.get("debit")).alias("debit"),
+                builder.sum(root.get("credit")).alias("credit"),
+                builder.max(root.get("opdate")).alias("opdate"))
+                .where(where)
+                .groupBy(root.get("account").get("id"), root.get("recipient").get("id"));
+        return entityManager.createQuery(criteriaQuery).getResultList();
+    }
+
+    /**
+     * Sums by currency and level 1 category: sub-categories are grouped under
+     * their level 1 ancestor, root categories and uncategorized rows stay as
+     * they are.
+     */
+    private List<Tuple> sumByCategory(TransactionType type, Collection<Long> accList, SummaryRange range) {
+        var builder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = builder.createTupleQuery();
+        JpaRoot<?> root = (JpaRoot<?>) (range.rollup() ? criteriaQuery.from(MonthlyRollup.class)
+                : criteriaQuery.from(Transaction.class));
+        var closure = root.join(CategoryClosure.class, SqmJoinType.LEFT);
+        closure.on(builder.equal(closure.get("id").get("descendantId"), root.get("category").get("id")),
+                builder.equal(closure.get("ancestorLevel"), 1));
+        var category = builder.coalesce(closure.get("id").<Long>get("ancestorId"),
+                root.get("category").<Long>get("id"));
+        var side = root.get(type == TransactionType.EXPENSE ? "account" : "recipient");
+        var where = type == TransactionType.EXPENSE
+                ? builder.and(root.get("account").get("id").in(accList), root.get("recipient").isNull())
+                : builder.and(root.get("account").isNull(), root.get("recipient").get("id").in(accList));
+        where = appendRangeCriteria(builder, root, range, where);
+        criteriaQuery.multiselect(category.alias("category"), side.get("currency").alias("currency"),
+                builder.sum(root.get(type == TransactionType.EXPENSE ? "debit" : "credit")).alias("sum"))
+                .where(where)
+                .groupBy(category, side.get("currency"));
+        return entityManager.createQuery(criteriaQuery).getResultList();
+    }
+
+    private Predicate appendRangeCriteria(CriteriaBuilder builder, Root<?> root, SummaryRange range,
+            Predicate where) {
+        if (range.from() != null) {
+            where = builder.and(where, range.rollup()
+                    ? builder.greaterThanOrEqualTo(root.<LocalDate>get("period"), range.from().toLocalDate())
+                    : builder.greaterThanOrEqualTo(root.<LocalDateTime>get("opdate"), range.from()));
+        }
+        if (range.to() != null) {
+            where = builder.and(where, range.rollup()
+                    ? builder.lessThan(root.<LocalDate>get("period"), range.to().toLocalDate())
+                    : builder.lessThan(root.<LocalDateTime>get("opdate"), range.to()));
+        }
+        return where;
+    }
+
+    /**
+     * Splits [from, to) into the whole months answered by the rollups and the
+     * partial months at the edges. A range ending on the last moment of a month
+     * includes that whole month.
+     */
+    private static List<SummaryRange> summaryRanges(LocalDateTime from, LocalDateTime to) {
+        var start = from == null || from.equals(CheckpointService.startOfMonth(from)) ? from
+                : CheckpointService.startOfMonth(from).plusMonths(1);
+        var end = to == null ? null : CheckpointService.startOfMonth(to);
+        if (end != null && to.plusNanos(1).equals(end.plusMonths(1))) {
+            end = end.plusMonths(1);
+        }
+        if (start != null && end != null && !start.isBefore(end)) {
+            return List.of(new SummaryRange(from, to, false));
+        }
+        var ranges = new ArrayList<SummaryRange>();
+        if (start != null && !start.equals(from)) {
+            ranges.add(new SummaryRange(from, start, false));
+        }
+        ranges.add(new SummaryRange(start, end, true));
+        if (end != null && end.isBefore(to)) {
+            ranges.add(new SummaryRange(end, to, false));
+        }
+        return ranges;
+    }
+
+    private record SummaryRange(LocalDateTime from, LocalDateTime to, boolean rollup) {
+    }
+
     public TransactionDto getTransaction(Long id, Long userId) {
-        var transaction = transactionRepository.findById(id).orElseThrow();
-        var accList = new ArrayList<Long>();
-        if (transaction.getAccount() != null) {
-            accList.add(transaction.getAccount().getId());
-        }
-        if (transaction.getRecipient() != null) {
-            accList.add(transaction.getRecipient().getId());
-        }
-        var balances = getBalances(accList, null, transaction.getOpdate(), transaction.getId());
-        BigDecimal accountBalance = transaction.getAccount() == null ? null
-                : transaction.getAccount().getStartBalance()
-                        .subtract(balances.stream().filter(b -> transaction.getAccount().getId().equals(b.accountId()))
-                                .map(b -> b.debit()).reduce(BigDecimal.ZERO, BigDecimal::add))
-                        .add(balances.stream().filter(b -> transaction.getAccount().getId().equals(b.recipientId()))
-                                .map(b -> b.credit()).reduce(BigDecimal.ZERO, BigDecimal::add))
-                        .subtract(transaction.getDebit());
-        BigDecimal recipientBalance = transaction.getRecipient() == null ? null
-                : transaction.getRecipient().getStartBalance()
-                        .subtract(balances.stream().filter(b -> transaction.getRecipient().getId().equals(b.accountId()))
-                                .map(b -> b.debit()).reduce(BigDecimal.ZERO, BigDecimal::add))
-                        .add(balances.stream().filter(b -> transaction.getRecipient().getId().equals(b.recipientId()))
-                                .map(b -> b.credit()).reduce(BigDecimal.ZERO, BigDecimal::add))
-                        .add(transaction.getCredit());
-        return TransactionDto.fromEntity(transaction, userId, accountBalance, recipientBalance);
-    }
-
-    public List<TransactionDto> getTransactions(Long userId, Collection<Long> accountIdsFilter, String search,
-            Long categoryId, String currency, LocalDateTime from, LocalDateTime to, int offset, int limit) {
-        var userAccounts = aclService.getAccounts(userId);
+        var rows = selectRows((query, builder, root) -> builder.equal(root.get("id"), id), 0, 0);
+        var row = rows.stream().findFirst().orElseThrow();
+        var accList = accountIds(rows);
+        var balances = getRunningBalances(rows, accList);
+        var deltas = assertionService.getDeltas(accList, row.opdate(), row.opdate());
+        var accounts = accountViews(userId, accList);
+        return toDto(row, accounts, categoryService.getTree(userId),
+                withDelta(balances.get(Posting.DEBIT).get(row.id()), row.accountId(), deltas, row.opdate()),
+                withDelta(balances.get(Posting.CREDIT).get(row.id()), row.recipientId(), deltas, row.opdate()));
+    }
+
+    /**
+     * Returns a page of transactions ordered by opdate and id descending. Pages
+     * are addressed either by offset or by the cursor returned with the previous
+     * page; the cursor takes precedence. Running balances are read for every
+     * page, so writes made between two page requests are reflected.
+     */
+    public TransactionPage getTransactions(Long userId, Collection<Long> accountIdsFilter, String search,
+            Long categoryId, String currency, LocalDateTime from, LocalDateTime to, int offset, int limit,
+            String cursor) {
+        var userAccounts = aclService.getAccessibleAccounts(userId);
         var validAccountIds = userAccounts.stream()
-                .filter(a -> currency == null || currency.isBlank() || currency.equals(a.getCurrency()))
-                .map(Account::getId)
+                .filter(a -> currency == null || currency.isBlank() || currency.equals(a.currency()))
+                .map(AccessibleAccount::id)
                 .filter(id -> accountIdsFilter == null || accountIdsFilter.isEmpty() || accountIdsFilter.contains(id))
                 .toList();
         if (validAccountIds.isEmpty()) {
-            return List.of();
+            return new TransactionPage(List.of(), null);
         }
-        var trx = queryTransactions(userId, validAccountIds, search, categoryId, from, to, offset, limit);
+        var position = cursor == null || cursor.isBlank() ? null : TransactionCursor.decode(cursor);
+        var trx = queryTransactionRows(userId, validAccountIds, search, categoryId, from, to, position,
+                position == null ? offset : 0, limit);
         if (trx.isEmpty()) {
-            return List.of();
+            return new TransactionPage(List.of(), null);
         }
-        var actualAccountIds = trx.stream().flatMap(t -> {
-            var list = new ArrayList<Long>();
-            if (t.getAccount() != null) {
-                list.add(t.getAccount().getId());
-            }
-            if (t.getRecipient() != null) {
-                list.add(t.getRecipient().getId());
-            }
-            return list.stream();
-        }).toList();
-        var last = trx.getLast();
         var calcBalances = (search == null || search.isBlank()) && categoryId == null;
-        List<TransactionSum> rawBalnces = calcBalances
-                ? getBalances(actualAccountIds, null, last.getOpdate(), last.getId())
-                : List.of();
-        Map<Long, BigDecimal> accBalances = new HashMap<>();
-        var dto = new TransactionDto[trx.size()];
-        // iterate over transactions in reverse order
-        for (var i = trx.size() - 1; i >= 0; i--) {
-            var t = trx.get(i);
-            var account = t.getAccount();
-            var recipient = t.getRecipient();
+        var balances = calcBalances ? getRunningBalances(trx, accountIds(trx))
+                : Map.<Short, Map<Long, BigDecimal>>of(Posting.DEBIT, Map.of(), Posting.CREDIT, Map.of());
+        // computed balances are raw, corrections of assertions are added per row
+        var deltas = calcBalances ? assertionService.getDeltas(accountIds(trx), trx.getLast().opdate(),
+                trx.getFirst().opdate()) : Map.<Long, List<AssertionDelta>>of();
+        var accounts = accountViews(userId, accountIds(trx));
+        var categories = categoryService.getTree(userId);
+        var dto = new ArrayList<TransactionDto>(trx.size());
+        for (var t : trx) {
             BigDecimal accountBalance = null;
             BigDecimal recipientBalance = null;
             if (calcBalances) {
-                if (account != null) {
-                    accountBalance = accBalances.computeIfAbsent(account.getId(), id -> account.getStartBalance()
-                            .subtract(rawBalnces.stream().filter(b -> account.getId().equals(b.accountId()))
-                                    .map(b -> b.debit()).reduce(BigDecimal.ZERO, BigDecimal::add))
-                            .add(rawBalnces.stream().filter(b -> account.getId().equals(b.recipientId()))
-                                    .map(b -> b.credit()).reduce(BigDecimal.ZERO, BigDecimal::add)));
-                    accountBalance = accountBalance.subtract(t.getDebit());
-                    accBalances.put(account.getId(), accountBalance);
-                }
-                if (recipient != null) {
-                    recipientBalance = accBalances.computeIfAbsent(recipient.getId(), id -> recipient.getStartBalance()
-                            .subtract(rawBalnces.stream().filter(b -> recipient.getId().equals(b.accountId()))
-                                    .map(b -> b.debit()).reduce(BigDecimal.ZERO, BigDecimal::add))
-                            .add(rawBalnces.stream().filter(b -> recipient.getId().equals(b.recipientId()))
-                                    .map(b -> b.credit()).reduce(BigDecimal.ZERO, BigDecimal::add)));
-                    recipientBalance = recipientBalance.add(t.getCredit());
-                    accBalances.put(recipient.getId(), recipientBalance);
-                }
+                recipientBalance = withDelta(balances.get(Posting.CREDIT).get(t.id()), t.recipientId(), deltas,
+                        t.opdate());
+                accountBalance = withDelta(balances.get(Posting.DEBIT).get(t.id()), t.accountId(), deltas,
+                        t.opdate());
+            }
+            dto.add(toDto(t, accounts, categories, accountBalance, recipientBalance));
+        }
+        var last = trx.getLast();
+        var next = limit > 0 && trx.size() == limit
+                ? new TransactionCursor(last.opdate(), last.id()).encode()
+                : null;
+        return new TransactionPage(dto, next);
+    }
+
+    private static BigDecimal withDelta(BigDecimal balance, Long accountId, Map<Long, List<AssertionDelta>> deltas,
+            LocalDateTime opdate) {
+        if (balance == null || accountId == null) {
+            return balance;
+        }
+        return balance.add(BalanceAssertionService.deltaBefore(deltas.get(accountId), opdate));
+    }
+
+    private TransactionDto toDto(TransactionRow row, Map<Long, AccountDto> accounts, CategoryTree categories,
+            BigDecimal accountBalance, BigDecimal recipientBalance) {
+        var account = row.accountId() == null ? null
+                : accounts.get(row.accountId()).withBalance(accountBalance, row.opdate());
+        var recipient = row.recipientId() == null ? null
+                : accounts.get(row.recipientId()).withBalance(recipientBalance, row.opdate());
+        var category = row.categoryId() == null ? null : categories.find(row.categoryId())
+                .orElseGet(() -> CategoryDto.fromEntity(entityManager.find(Category.class, row.categoryId())));
+        return TransactionDto.fromRow(row, account, recipient, category);
+    }
+
+    /**
+     * Returns the accounts as seen by the user, without balances, read with a
+     * single query.
+     */
+    private Map<Long, AccountDto> accountViews(Long userId, Collection<Long> accountIds) {
+        var cached = aclService.getAccountViews(userId);
+        var result = new HashMap<Long, AccountDto>();
+        var misses = new ArrayList<Long>();
+        accountIds.forEach(id -> {
+            var view = cached.get(id);
+            if (view != null) {
+                result.put(id, view);
+            } else {
+                misses.add(id);
             }
-            dto[i] = TransactionDto.fromEntity(t, userId, accountBalance, recipientBalance);
+        });
+        // counterparts of transfers from accounts the user cannot see
+        if (!misses.isEmpty()) {
+            accountRepository.findAllById(misses)
+                    .forEach(a -> result.put(a.getId(), AccountDto.fromEntity(a, userId, null, null)));
         }
-        return Arrays.asList(dto);
+        return result;
+    }
+
+    /**
+     * Reads post-transaction balances of a page of transactions ordered by
+     * opdate and id descending with a single window query over postings.
+     *
+     * @return balances by transaction id for the debit and the credit side
+     */
+    private Map<Short, Map<Long, BigDecimal>> getRunningBalances(List<TransactionRow> trx, Collection<Long> accList) {
+        var from = CheckpointService.startOfMonth(trx.getLast().opdate());
+        var balances = postingRepository.findRunningBalances(accList, from, trx.getFirst().opdate(),
+                from.toLocalDate(), trx.stream().map(TransactionRow::id).toList());
+        Map<Short, Map<Long, BigDecimal>> result = Map.of(Posting.DEBIT, new HashMap<>(), Posting.CREDIT, new HashMap<>());
+        balances.forEach(b -> result.get(b.getSide()).put(b.getTransactionId(), b.getBalance()));
+        return result;
     }
 
+    private static List<Long> accountIds(List<TransactionRow> trx) {
+        return trx.stream()
+                .flatMap(t -> Stream.of(t.accountId(), t.recipientId()))
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+    }
+
+    @Transactional
     public TransactionDto createTransaction(TransactionDto dto, Long userId) {
+        if (dto.type() == TransactionType.CORRECTION) {
+            return saveCorrection(dto, userId);
+        }
         var transaction = new Transaction();
         return saveTransaction(transaction, dto, userId);
     }
 
+    @Transactional
     public TransactionDto updateTransaction(TransactionDto dto, Long userId) {
+        if (dto.type() == TransactionType.CORRECTION) {
+            return saveCorrection(dto, userId);
+        }
         var transaction = transactionRepository.findById(dto.id()).orElseThrow();
         return saveTransaction(transaction, dto, userId);
     }
 
+    /**
+     * Corrections are no longer stored as transactions: the balance they lead to
+     * at their operation date is stored as a balance assertion instead. The
+     * returned correction carries the id of the assertion, which is loaded and
+     * deleted through the assertion endpoints.
+     */
+    private TransactionDto saveCorrection(TransactionDto dto, Long userId) {
+        var side = dto.recipient() != null ? dto.recipient() : dto.account();
+        if (side == null) {
+            throw new IllegalArgumentException("Correction without account");
+        }
+        var accessible = aclService.getAccessibleAccounts(userId).stream()
+                .filter(a -> a.id().equals(side.id()))
+                .findFirst()
+                .orElseThrow(() -> new ResourceNotFoundException("Account not found with id " + side.id()));
+        var account = entityManager.find(Account.class, accessible.id());
+        var amount = dto.recipient() != null ? AccountDto.unsetScale(dto.credit(), account.getScale())
+                : AccountDto.unsetScale(dto.debit(), account.getScale()).negate();
+        var before = TransactionSum.net(getBalances(List.of(account.getId()), null, dto.opdate(), null))
+                .getOrDefault(account.getId(), BigDecimal.ZERO);
+        var balance = AccountDto.setScale(account.getStartBalance().add(before).add(amount), account.getScale());
+        var assertion = assertionService.saveAssertion(
+                new BalanceAssertionDto(null, account.getId(), dto.opdate(), balance), userId);
+        return new TransactionDto(assertion.id(), userId, assertion.opdate(), TransactionType.CORRECTION,
+                dto.account(), dto.debit(), dto.recipient(), dto.credit(), dto.category(), dto.currency(),
+                dto.party(), dto.details());
+    }
+
     private TransactionDto saveTransaction(Transaction trx, TransactionDto dto, Long userId) {
         var debit = AccountDto.unsetScale(dto.debit(),
                 dto.account() == null ? (dto.recipient() == null ? 2 : dto.recipient().scale())
@@ -189,9 +452,12 @@ public class TransactionService {
         var credit = AccountDto.unsetScale(dto.credit(),
                 dto.recipient() == null ? (dto.account() == null ? 2 : dto.account().scale())
                         : dto.recipient().scale());
+        var affected = new ArrayList<Account>();
+        var from = dto.opdate();
         if (trx.getId() != null) {
-            updateCorrections(userId, trx.getAccount(), debit.negate(), trx.getOpdate(), trx.getId(), false);
-            updateCorrections(userId, trx.getRecipient(), credit, trx.getOpdate(), trx.getId(), false);
+            affected.add(trx.getAccount());
+            affected.add(trx.getRecipient());
+            from = trx.getOpdate().isBefore(from) ? trx.getOpdate() : from;
         }
         trx.setOwnerId(userId);
         trx.setOpdate(dto.opdate());
@@ -211,151 +477,191 @@ public class TransactionService {
         trx.setDetails(dto.details());
         trx.setUpdated(LocalDateTime.now());
         transactionRepository.save(trx);
-        updateCorrections(userId, trx.getAccount(), debit, dto.opdate(), trx.getId(), true);
-        updateCorrections(userId, trx.getRecipient(), credit.negate(), dto.opdate(), trx.getId(), true);
+        affected.add(trx.getAccount());
+        affected.add(trx.getRecipient());
+        refreshBalances(affected, from);
         return getTransaction(trx.getId(), userId);
     }
 
+    @Transactional
     public void deleteTransaction(Long id, Long userId) {
         var trx = transactionRepository.findById(id).orElseThrow();
-        updateCorrections(userId, trx.getAccount(), trx.getDebit().negate(), trx.getOpdate(), trx.getId(), true);
-        updateCorrections(userId, trx.getRecipient(), trx.getCredit(), trx.getOpdate(), trx.getId(), true);
         transactionRepository.delete(trx);
+        refreshBalances(Arrays.asList(trx.getAccount(), trx.getRecipient()), trx.getOpdate());
     }
 
-    public void deleteTransactionsByAccounts(List<Long> ids) {
+    /**
+     * Deletes the transactions of the accounts. Transfers with accounts that
+     * stay are kept as one-sided transactions of those accounts, with the
+     * deleted account as party.
+     */
+    @Transactional
+    public DeletedTransactions deleteTransactionsByAccounts(List<Long> ids) {
         if (ids == null || ids.isEmpty()) {
-            return;
-        }
-        var transactions = transactionRepository.findByAccountIdInOrRecipientIdIn(ids, ids);
-        transactionRepository.deleteAll(transactions.stream()
-                .filter(t -> t.getAccount() == null || t.getRecipient() == null)
-                .collect(Collectors.toList()));
-        for (var trx : transactions) {
-            // update transfers
-            if (trx.getAccount() != null && trx.getRecipient() != null) {
-                if (ids.contains(trx.getAccount().getId())) {
-                    trx.setCurrency(trx.getAccount().getCurrency());
-                    if (trx.getParty() == null) {
-                        trx.setParty(trx.getAccount().getAddress() != null ? trx.getAccount().getAddress() : AccountDto.getFullName(trx.getAccount()));
-                    }
-                    trx.setAccount(null);
-                }
-                if (ids.contains(trx.getRecipient().getId())) {
-                    trx.setCurrency(trx.getRecipient().getCurrency());
-                    if (trx.getParty() == null) {
-                        trx.setParty(trx.getRecipient().getAddress() != null ? trx.getRecipient().getAddress() : AccountDto.getFullName(trx.getRecipient()));
-                    }
-                    trx.setRecipient(null);
-                }
-                if (trx.getAccount() == null && trx.getRecipient() == null) {
-                    // if both accounts are deleted, remove the transaction
-                    transactionRepository.delete(trx);
-                } else {
-                    // save the transaction with updated accounts
-                    trx.setUpdated(LocalDateTime.now());
-                    transactionRepository.save(trx);
-                }
-            }
+            return new DeletedTransactions(0, 0);
         }
+        var counterparts = transactionRepository.findCounterpartIds(ids);
+        var deleted = transactionRepository.deleteByAccountIds(ids);
+        var converted = transactionRepository.detachAccounts(ids) + transactionRepository.detachRecipients(ids);
+        // rollups of the remaining side are keyed by both accounts, so they change too
+        checkpointService.rebuild(Stream.concat(ids.stream(), counterparts.stream()).toList());
+        return new DeletedTransactions(deleted, converted);
     }
 
     /**
      * Saves a list of import records, updating existing transactions if necessary.
+     * New rows are inserted and matched rows updated in JDBC batches, and the
+     * balances of the account are refreshed once for the whole statement.
      *
      * @param userId   the ID of the user performing the import
      * @param accountId the ID of the account associated with the import
      * @param records  the list of import records to save
      */
+    @Transactional
     public void saveImport(Long userId, Long accountId, List<ImportDto> records) {
         if (records == null || records.isEmpty()) {
             return;
         }
         var account = entityManager.find(Account.class, accountId);
         var minOpdate = records.stream().map(ImportDto::getOpdate).min(LocalDateTime::compareTo).orElse(null);
-        var corrections = queryTransactions(userId, List.of(accountId), null,
-                (long) (TransactionType.CORRECTION.getValue()), minOpdate, null, 0, 0);
-        for (var record : records) {
-            if (record.isSelected()) {
-                var transaction = new Transaction();
-                transaction.setOwnerId(userId);
-                transaction.setOpdate(record.getOpdate());
-                if (record.getType() == TransactionType.EXPENSE) {
-                    transaction.setAccount(account);
-                } else {
-                    transaction.setRecipient(account);
-                }
-                var debit = AccountDto.unsetScale(record.getDebit(), account.getScale());
-                var credit = AccountDto.unsetScale(record.getCredit(), account.getScale());
-                transaction.setDebit(debit);
-                transaction.setCredit(credit);
-                transaction.setCategory(categoryService.getCategory(record.getCategory(), userId));
-                transaction.setCurrency(record.getCurrency());
-                transaction.setParty(record.getParty());
-                transaction.setDetails(record.getDetails());
-                transactionRepository.save(transaction);
-                corrections.stream().filter(c -> c.getOpdate().isAfter(record.getOpdate()))
-                        .forEach(c -> updateCorrection(c,
-                                record.getType() == TransactionType.EXPENSE ? debit : credit.negate()));
-            } else if (record.getId() != null) {
-                var update = false;
-                var transaction = transactionRepository.findById(record.getId()).orElseThrow();
-                if (record.getType() == TransactionType.INCOME && transaction.getRecipient() == null
-                        && transaction.getParty() != null && transaction.getParty().equals(account.getAddress())) {
-                    transaction.setParty(null);
-                    transaction.setCategory(null);
-                    transaction.setCurrency(null);
-                    transaction.setRecipient(account);
-                    update = true;
-                } else if (record.getType() == TransactionType.EXPENSE && transaction.getAccount() == null
-                        && transaction.getParty() != null && transaction.getParty().equals(account.getAddress())) {
-                    transaction.setParty(null);
-                    transaction.setCategory(null);
-                    transaction.setCurrency(null);
-                    transaction.setAccount(account);
-                    update = true;
-                } else if ((transaction.getParty() == null || transaction.getParty().isBlank())
-                        && record.getParty() != null
-                        && !record.getParty().isBlank()) {
+        // a statement repeats few categories, resolve (and create) each of them once
+        var categories = new HashMap<CategoryDto, Category>();
+        var inserts = records.stream()
+                .filter(ImportDto::isSelected)
+                .map(record -> {
+                    var transaction = new Transaction();
+                    transaction.setOwnerId(userId);
+                    transaction.setOpdate(record.getOpdate());
+                    if (record.getType() == TransactionType.EXPENSE) {
+                        transaction.setAccount(account);
+                    } else {
+                        transaction.setRecipient(account);
+                    }
+                    transaction.setDebit(AccountDto.unsetScale(record.getDebit(), account.getScale()));
+                    transaction.setCredit(AccountDto.unsetScale(record.getCredit(), account.getScale()));
+                    if (record.getCategory() != null) {
+                        transaction.setCategory(categories.computeIfAbsent(record.getCategory(),
+                                dto -> categoryService.getCategory(dto, userId)));
+                    }
+                    transaction.setCurrency(record.getCurrency());
                     transaction.setParty(record.getParty());
-                    update = true;
-                }
-                if ((transaction.getDetails() == null || transaction.getDetails().isBlank())
-                        && record.getDetails() != null
-                        && !record.getDetails().isBlank()) {
                     transaction.setDetails(record.getDetails());
-                    update = true;
-                }
-                if (update) {
-                    transaction.setOwnerId(userId);
-                    transaction.setUpdated(LocalDateTime.now());
-                    transactionRepository.save(transaction);
-                }
+                    return transaction;
+                })
+                .toList();
+        transactionRepository.saveAll(inserts);
+        var matched = records.stream().filter(r -> !r.isSelected() && r.getId() != null).toList();
+        var existing = transactionRepository.findAllById(matched.stream().map(ImportDto::getId).toList()).stream()
+                .collect(Collectors.toMap(Transaction::getId, t -> t));
+        var updates = new ArrayList<Transaction>();
+        // a merged row may belong to another account too, e.g. an expense of
+        // that account that becomes a transfer to this one
+        var affected = new ArrayList<Account>();
+        affected.add(account);
+        var from = minOpdate;
+        for (var record : matched) {
+            var transaction = existing.get(record.getId());
+            if (transaction == null) {
+                throw new ResourceNotFoundException("Transaction not found with id " + record.getId());
+            }
+            if (mergeImported(transaction, record, account)) {
+                transaction.setOwnerId(userId);
+                transaction.setUpdated(LocalDateTime.now());
+                updates.add(transaction);
+                affected.add(transaction.getAccount());
+                affected.add(transaction.getRecipient());
+                from = from == null || transaction.getOpdate().isBefore(from) ? transaction.getOpdate() : from;
             }
         }
-        corrections.stream().filter(c -> c.getCredit().equals(BigDecimal.ZERO) && c.getDebit().equals(BigDecimal.ZERO))
-                .forEach(c -> transactionRepository.delete(c));
-        ;
+        transactionRepository.saveAll(updates);
+        refreshBalances(affected.stream().distinct().toList(), from);
+    }
+
+    /**
+     * Fills in what the imported record knows and the existing transaction
+     * lacks: the imported account for a transfer booked against its address,
+     * otherwise missing party and details.
+     *
+     * @return whether the transaction was changed
+     */
+    private static boolean mergeImported(Transaction transaction, ImportDto record, Account account) {
+        var update = false;
+        if (record.getType() == TransactionType.INCOME && transaction.getRecipient() == null
+                && transaction.getParty() != null && transaction.getParty().equals(account.getAddress())) {
+            transaction.setParty(null);
+            transaction.setCategory(null);
+            transaction.setCurrency(null);
+            transaction.setRecipient(account);
+            update = true;
+        } else if (record.getType() == TransactionType.EXPENSE && transaction.getAccount() == null
+                && transaction.getParty() != null && transaction.getParty().equals(account.getAddress())) {
+            transaction.setParty(null);
+            transaction.setCategory(null);
+            transaction.setCurrency(null);
+            transaction.setAccount(account);
+            update = true;
+        } else if ((transaction.getParty() == null || transaction.getParty().isBlank())
+                && record.getParty() != null
+                && !record.getParty().isBlank()) {
+            transaction.setParty(record.getParty());
+            update = true;
+        }
+        if ((transaction.getDetails() == null || transaction.getDetails().isBlank())
+                && record.getDetails() != null
+                && !record.getDetails().isBlank()) {
+            transaction.setDetails(record.getDetails());
+            update = true;
+        }
+        return update;
+    }
+
+    public void rebuildBalances(Long userId) {
+        checkpointService.rebuild(aclService.getAccessibleAccounts(userId).stream().map(AccessibleAccount::id).toList());
+    }
+
+    /**
+     * Compares checkpointed balances with a full scan of the transaction history.
+     *
+     * @return the ids of the accounts whose checkpoints are inconsistent
+     */
+    public List<Long> checkBalances(Long userId) {
+        var accList = aclService.getAccessibleAccounts(userId).stream().map(AccessibleAccount::id).toList();
+        if (accList.isEmpty()) {
+            return List.of();
+        }
+        var expected = TransactionSum.net(getBalances(null, accList, null, null, null, null, null));
+        var actual = TransactionSum.net(checkpointService.getBalances(accList, null));
+        return accList.stream()
+                .filter(id -> expected.getOrDefault(id, BigDecimal.ZERO)
+                        .compareTo(actual.getOrDefault(id, BigDecimal.ZERO)) != 0)
+                .toList();
+    }
+
+    private void refreshBalances(Collection<Account> accounts, LocalDateTime from) {
+        checkpointService.refresh(accounts.stream().filter(Objects::nonNull).map(Account::getId).toList(), from);
     }
 
     public Collection<Summary> getSummary(Long userId, Collection<Long> accountIdsFilter, String search, Long category, LocalDateTime from,
             LocalDateTime to) {
-        var userAccounts = aclService.getAccounts(userId);
+        var userAccounts = aclService.getAccessibleAccounts(userId);
         var validAccounts = userAccounts.stream()
                 .filter(a -> accountIdsFilter == null || accountIdsFilter.isEmpty()
-                        || accountIdsFilter.contains(a.getId()))
-                .collect(Collectors.toMap(a -> a.getId(), a -> a));
+                        || accountIdsFilter.contains(a.id()))
+                .collect(Collectors.toMap(a -> a.id(), a -> a));
         if (validAccounts.isEmpty()) {
             return List.of();
         }
-        var result = validAccounts.values().stream().map(Account::getCurrency).distinct()
+        var result = validAccounts.values().stream().map(AccessibleAccount::currency).distinct()
                 .collect(Collectors.toMap(c -> c,
                         c -> new Summary(c, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO)));
-        getBalances(userId, validAccounts.keySet(), search, category, from, to, null).forEach(b -> {
+        var balances = search == null || search.isBlank()
+                ? getRollupBalances(userId, validAccounts.keySet(), category, from, to)
+                : getBalances(userId, validAccounts.keySet(), search, category, from, to, null);
+        balances.forEach(b -> {
             if (validAccounts.containsKey(b.accountId())) {
                 var account = validAccounts.get(b.accountId());
-                var debit = AccountDto.setScale(b.debit(), account.getScale());
-                var summary = result.get(account.getCurrency());
+                var debit = AccountDto.setScale(b.debit(), account.scale());
+                var summary = result.get(account.currency());
                 if (b.recipientId() == null) {
                     // expense
                     summary.setDebit(summary.getDebit().add(debit));
@@ -368,8 +674,8 @@ public class TransactionService {
             }
             if (validAccounts.containsKey(b.recipientId())) {
                 var recipient = validAccounts.get(b.recipientId());
-                var credit = AccountDto.setScale(b.credit(), recipient.getScale());
-                var summary = result.get(recipient.getCurrency());
+                var credit = AccountDto.setScale(b.credit(), recipient.scale());
+                var summary = result.get(recipient.currency());
                 if (b.accountId() == null) {
                     // income
                     summary.setCredit(summary.getCredit().add(credit));
@@ -390,56 +696,32 @@ public class TransactionService {
         if (type != TransactionType.EXPENSE && type != TransactionType.INCOME) {
             return List.of();
         }
-        var userAccounts = aclService.getAccounts(userId);
-        var validAccounts = userAccounts.stream().map(Account::getId)
+        var userAccounts = aclService.getAccessibleAccounts(userId);
+        var validAccounts = userAccounts.stream().map(AccessibleAccount::id)
                 .filter(a -> accountIdsFilter == null || accountIdsFilter.isEmpty()
                         || accountIdsFilter.contains(a))
                 .toList();
         if (validAccounts.isEmpty()) {
             return List.of();
         }
-        var builder = entityManager.getCriteriaBuilder();
-        var criteriaQuery = builder.createQuery(CategorySum.class);
-        var root = criteriaQuery.from(Transaction.class);
-        var category = root.join("category", JoinType.LEFT);
-        var where = type == TransactionType.EXPENSE
-                ? builder.and(root.get("account").get("id").in(validAccounts), root.get("recipient").isNull())
-                : builder.and(root.get("account").isNull(), root.get("recipient").get("id").in(validAccounts));
-        if (from != null) {
-            var greaterThanOrEqualTo = builder.greaterThanOrEqualTo(root.<LocalDateTime>get("opdate"), from);
-            where = builder.and(where, greaterThanOrEqualTo);
-        }
-        if (to != null) {
-            var lessThanOpdate = builder.lessThan(root.<LocalDateTime>get("opdate"), to);
-            where = builder.and(where, lessThanOpdate);
-        }
-        if (type == TransactionType.EXPENSE) {
-            criteriaQuery.multiselect(category, root.get("account").get("currency"),
-                    builder.sum(root.get("debit")).alias("sum")).where(where)
-                    .groupBy(category, root.get("account").get("currency"));
-        } else {
-            criteriaQuery.multiselect(category, root.get("recipient").get("currency"),
-                    builder.sum(root.get("credit")).alias("sum")).where(where)
-                    .groupBy(category, root.get("recipient").get("currency"));
-        }
-        var categorySums = entityManager.createQuery(criteriaQuery).getResultList();
         Map<String, Integer> scaleMap = userAccounts.stream()
-                .collect(Collectors.toMap(a -> a.getCurrency(), a -> a.getScale(), (a, b) -> a));
-        var typecat = CategoryDto.fromEntity(entityManager.find(Category.class, type.getValue()));
-        categorySums.forEach(cs -> {
-            if (cs.getCategory() == null) {
-                cs.setCategory(typecat);
-            } else if (cs.getCategory().ownerId() != userId && cs.getCategory().level() > 0
-                    || cs.getCategory().level() > 1) {
-                Category cat = categoryService.getCategory(cs.getCategory(), userId);
-                while (cat.getParent().getParent() != null) {
-                    cat = cat.getParent();
-                }
-                cs.setCategory(CategoryDto.fromEntity(cat));
-            }
-            cs.setSum(AccountDto.setScale(cs.getSum(), scaleMap.get(cs.getCurrency())));
-        });
-        categorySums = categorySums.stream()
+                .collect(Collectors.toMap(a -> a.currency(), a -> a.scale(), (a, b) -> a));
+        var tree = categoryService.getTree(userId);
+        var typecat = tree.find((long) type.getValue()).orElseThrow();
+        var categorySums = summaryRanges(from, to).stream()
+                .flatMap(r -> sumByCategory(type, validAccounts, r).stream())
+                .map(t -> {
+                    var id = t.get("category", Long.class);
+                    // categories of other owners are shown as the user's category with the same name
+                    var category = id == null ? typecat
+                            : tree.merged(tree.find(id).orElseGet(
+                                    () -> CategoryDto.fromEntity(entityManager.find(Category.class, id))), userId);
+                    var currency = t.get("currency", String.class);
+                    return new CategorySum(category, currency,
+                            AccountDto.setScale(t.get("sum", BigDecimal.class), scaleMap.get(currency)));
+                })
+                .toList();
+        return categorySums.stream()
                 .collect(Collectors.groupingBy(cs -> Pair.of(cs.getCurrency(), cs.getCategory()))).entrySet().stream()
                 .map(e -> e.getValue().stream().reduce(
                         new CategorySum(e.getKey().getSecond(), e.getKey().getFirst(), BigDecimal.ZERO), (a, g) -> {
@@ -447,65 +729,37 @@ public class TransactionService {
                             return a;
                         }))
                 .sorted((a, b) -> a.getCategory().fullName().compareToIgnoreCase(b.getCategory().fullName())).toList();
-        return categorySums;
-
-    }
-
-    private void updateCorrections(Long userId, Account account, BigDecimal amount, LocalDateTime opdate, Long id,
-            Boolean removeZeros) {
-        if (account == null) {
-            return;
-        }
-        var corrections = queryTransactions(userId, List.of(account.getId()), null,
-                (long) (TransactionType.CORRECTION.getValue()), opdate, null, 0, 0);
-        for (var correction : corrections) {
-            updateCorrection(correction, amount);
-            if (removeZeros && correction.getCredit().equals(BigDecimal.ZERO)
-                    && correction.getDebit().equals(BigDecimal.ZERO)) {
-                transactionRepository.delete(correction);
-            }
-        }
-    }
-
-    private void updateCorrection(Transaction correction, BigDecimal amount) {
-        if (correction.getAccount() == null) {
-            amount = amount.negate();
-        }
-        correction.setCredit(correction.getCredit().subtract(amount));
-        correction.setDebit(correction.getCredit());
-        if (correction.getCredit().compareTo(BigDecimal.ZERO) < 0) {
-            correction.setCredit(correction.getCredit().negate());
-            correction.setDebit(correction.getCredit());
-            var account = correction.getAccount();
-            correction.setAccount(correction.getRecipient());
-            correction.setRecipient(account);
-        }
     }
 
     public Optional<Transaction> findByMaxOpdate(Long accountId) {
         var builder = entityManager.getCriteriaBuilder();
-        var criteriaQuery = builder.createQuery(Transaction.class);
-        var root = criteriaQuery.from(Transaction.class);
-        var where = builder.or(builder.equal(root.get("account").get("id"), accountId),
-                builder.equal(root.get("recipient").get("id"), accountId));
-        criteriaQuery.select(root).where(where).orderBy(builder.desc(root.get("opdate")));
-        var trx = entityManager.createQuery(criteriaQuery).setMaxResults(1).getResultList();
-        return trx.isEmpty() ? Optional.empty() : Optional.of(trx.get(0));
+        var criteriaQuery = builder.createQuery(Long.class);
+        var root = criteriaQuery.from(Posting.class);
+        criteriaQuery.select(root.get("id").<Long>get("transactionId"))
+                .where(builder.equal(root.get("accountId"), accountId))
+                .orderBy(builder.desc(root.get("opdate")), builder.desc(root.get("id").<Long>get("transactionId")));
+        var ids = entityManager.createQuery(criteriaQuery).setMaxResults(1).getResultList();
+        return ids.isEmpty() ? Optional.empty() : transactionRepository.findById(ids.get(0));
     }
 
     public List<Transaction> queryTransactions(Long userId, Collection<Long> ai,
             String search, Long categoryId, LocalDateTime from, LocalDateTime to, int offset, int limit) {
+        return queryTransactions(userId, ai, search, categoryId, from, to, null, offset, limit);
+    }
+
+    /**
+     * Queries transactions ordered by opdate and id descending, starting right
+     * after the given keyset position when it is set.
+     */
+    public List<Transaction> queryTransactions(Long userId, Collection<Long> ai, String search, Long categoryId,
+            LocalDateTime from, LocalDateTime to, TransactionCursor position, int offset, int limit) {
         var builder = entityManager.getCriteriaBuilder();
         var criteriaQuery = builder.createQuery(Transaction.class);
         var root = criteriaQuery.from(Transaction.class);
-        var where = builder.or(root.get("account").get("id").in(ai), root.get("recipient").get("id").in(ai));
-        where = appendSearchCriteria(search, builder, root, where);
-        where = appendCategoryCriteria(userId, categoryId, builder, root, where);
-        if (from != null) {
-            where = builder.and(where, builder.greaterThanOrEqualTo(root.get("opdate"), from));
-        }
-        if (to != null) {
-            where = builder.and(where, builder.lessThan(root.get("opdate"), to));
+        var upper = position != null && (to == null || position.opdate().isBefore(to)) ? position.opdate() : to;
+        var where = filterTransactions(criteriaQuery, builder, root, userId, ai, search, categoryId, from, to, upper);
+        if (position != null) {
+            where = builder.and(where, afterPosition(builder, root, position));
         }
         criteriaQuery = criteriaQuery.where(where).orderBy(builder.desc(root.get("opdate")),
                 builder.desc(root.get("id")));
@@ -520,8 +774,114 @@ public class TransactionService {
         return trx;
     }
 
-    private Predicate appendCategoryCriteria(Long userId, Long categoryId, CriteriaBuilder builder, Root<Transaction> root,
-            Predicate where) {
+    /**
+     * Same as queryTransactions, but selects flat rows, so nothing is loaded
+     * into the persistence context.
+     */
+    public List<TransactionRow> queryTransactionRows(Long userId, Collection<Long> ai, String search,
+            Long categoryId, LocalDateTime from, LocalDateTime to, TransactionCursor position, int offset,
+            int limit) {
+        var upper = position != null && (to == null || position.opdate().isBefore(to)) ? position.opdate() : to;
+        return selectRows((query, builder, root) -> {
+            var where = filterTransactions(query, builder, root, userId, ai, search, categoryId, from, to, upper);
+            return position == null ? where : builder.and(where, afterPosition(builder, root, position));
+        }, offset, limit);
+    }
+
+    private List<TransactionRow> selectRows(RowFilter filter, int offset, int limit) {
+        var builder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = builder.createQuery(TransactionRow.class);
+        var root = criteriaQuery.from(Transaction.class);
+        criteriaQuery.select(rowSelection(builder, root))
+                .where(filter.apply(criteriaQuery, builder, root))
+                .orderBy(builder.desc(root.get("opdate")), builder.desc(root.get("id")));
+        var typedQuery = entityManager.createQuery(criteriaQuery)
+                .setHint(HibernateHints.HINT_READ_ONLY, true);
+        if (offset > 0) {
+            typedQuery = typedQuery.setFirstResult(offset);
+        }
+        if (limit > 0) {
+            typedQuery = typedQuery.setMaxResults(limit);
+        }
+        return typedQuery.getResultList();
+    }
+
+    private interface RowFilter {
+        Predicate apply(AbstractQuery<?> query, CriteriaBuilder builder, Root<Transaction> root);
+    }
+
+    private static CompoundSelection<TransactionRow> rowSelection(CriteriaBuilder builder, Root<Transaction> root) {
+        return builder.construct(TransactionRow.class, root.get("id"), root.get("ownerId"),
+                root.get("opdate"), root.get("account").get("id"), root.get("debit"),
+                root.get("recipient").get("id"), root.get("credit"), root.get("category").get("id"),
+                root.get("currency"), root.get("party"), root.get("details"));
+    }
+
+    private static Predicate afterPosition(CriteriaBuilder builder, Root<Transaction> root,
+            TransactionCursor position) {
+        return builder.or(
+                builder.lessThan(root.<LocalDateTime>get("opdate"), position.opdate()),
+                builder.and(builder.equal(root.get("opdate"), position.opdate()),
+                        builder.lessThan(root.get("id"), position.id())));
+    }
+
+    /**
+     * Streams flat rows in ascending (opdate, id) order through a forward-only
+     * cursor, nothing is attached to the persistence context. The stream must be
+     * consumed inside a transaction and closed by the caller.
+     */
+    public Stream<TransactionRow> streamTransactions(Long userId, Collection<Long> ai, String search,
+            Long categoryId, LocalDateTime from, LocalDateTime to) {
+        var builder = entityManager.getCriteriaBuilder();
+        var criteriaQuery = builder.createQuery(TransactionRow.class);
+        var root = criteriaQuery.from(Transaction.class);
+        var where = filterTransactions(criteriaQuery, builder, root, userId, ai, search, categoryId, from, to, to);
+        criteriaQuery.select(rowSelection(builder, root))
+                .where(where).orderBy(builder.asc(root.get("opdate")), builder.asc(root.get("id")));
+        return entityManager.createQuery(criteriaQuery)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    private Predicate filterTransactions(AbstractQuery<?> query, CriteriaBuilder builder, Root<Transaction> root,
+            Long userId, Collection<Long> ai, String search, Long categoryId, LocalDateTime from, LocalDateTime to,
+            LocalDateTime upper) {
+        var where = inAccounts(query, builder, root, ai, from, upper);
+        where = appendSearchCriteria(userId, search, builder, root, where);
+        where = appendCategoryCriteria(query, userId, categoryId, builder, root, where);
+        if (from != null) {
+            where = builder.and(where, builder.greaterThanOrEqualTo(root.get("opdate"), from));
+        }
+        if (to != null) {
+            where = builder.and(where, builder.lessThan(root.get("opdate"), to));
+        }
+        return where;
+    }
+
+    /**
+     * Matches transactions touching any of the accounts through the postings
+     * index instead of OR-ing account and recipient conditions. The date bounds
+     * are inclusive and only narrow the index range, callers still apply their
+     * own exact bounds.
+     */
+    private Predicate inAccounts(AbstractQuery<?> query, CriteriaBuilder builder, Root<Transaction> root,
+            Collection<Long> accList, LocalDateTime from, LocalDateTime to) {
+        var subquery = query.subquery(Long.class);
+        var posting = subquery.from(Posting.class);
+        var where = posting.get("accountId").in(accList);
+        if (from != null) {
+            where = builder.and(where, builder.greaterThanOrEqualTo(posting.<LocalDateTime>get("opdate"), from));
+        }
+        if (to != null) {
+            where = builder.and(where, builder.lessThanOrEqualTo(posting.<LocalDateTime>get("opdate"), to));
+        }
+        subquery.select(posting.get("id").<Long>get("transactionId")).where(where);
+        return root.get("id").in(subquery);
+    }
+
+    private Predicate appendCategoryCriteria(AbstractQuery<?> query, Long userId, Long categoryId,
+            CriteriaBuilder builder, Root<?> root, Predicate where) {
         if (categoryId != null) {
             if (categoryId == -TransactionType.EXPENSE.getValue()) {
                 where = builder.and(where, root.get("category").isNull(), root.get("recipient").isNull());
@@ -534,22 +894,35 @@ public class TransactionService {
             } else if (categoryId == TransactionType.TRANSFER.getValue()) {
                 where = builder.and(where, root.get("account").isNotNull(), root.get("recipient").isNotNull());
             } else if (categoryId == TransactionType.CORRECTION.getValue()) {
-                where = builder.and(where, root.get("category").get("id").in(categoryId));
+                // corrections are balance assertions, no transaction has this category
+                where = builder.disjunction();
             } else {
-                var categories = categoryService.getCategoriesFilter(userId, categoryId);
-                where = builder.and(where, root.get("category").get("id").in(categories));
+                // the category, the categories merged with it and all their descendants
+                var subquery = query.subquery(Long.class);
+                var closure = subquery.from(CategoryClosure.class);
+                subquery.select(closure.get("id").<Long>get("descendantId"))
+                        .where(closure.get("id").get("ancestorId")
+                                .in(categoryService.getCategoriesFilter(userId, categoryId)));
+                where = builder.and(where, root.get("category").get("id").in(subquery));
             }
         }
         return where;
     }
 
-    private Predicate appendSearchCriteria(String search, CriteriaBuilder builder, Root<Transaction> root, Predicate where) {
+    /**
+     * Matches upper(details) and upper(party) so the trigram indexes can serve the
+     * pattern. The user's categories are resolved to ids up front instead of
+     * joining them, which keeps the whole disjunction index-backed.
+     */
+    private Predicate appendSearchCriteria(Long userId, String search, CriteriaBuilder builder, Root<Transaction> root,
+            Predicate where) {
         if (search != null && !search.isBlank()) {
             var pattern = "%" + search.toUpperCase() + "%";
             var details = builder.like(builder.upper(root.get("details")), pattern);
             var party = builder.like(builder.upper(root.get("party")), pattern);
-            var category = builder.like(builder.upper(root.join("category", JoinType.LEFT).get("name")), pattern);
-            where = builder.and(where, builder.or(category, details, party));
+            var categories = categoryService.findIdsByName(userId, pattern);
+            where = builder.and(where, categories.isEmpty() ? builder.or(details, party)
+                    : builder.or(root.get("category").get("id").in(categories), details, party));
         }
         return where;
     }
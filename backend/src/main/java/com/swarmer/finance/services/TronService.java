@@ -3,26 +3,25 @@ package com.swarmer.finance.services;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.swarmer.finance.dto.TronWalletBalanceDto;
 import com.swarmer.finance.dto.ImportDto;
-import com.swarmer.finance.models.Transaction;
+import com.swarmer.finance.dto.WalletHistory;
+import com.swarmer.finance.dto.WalletSyncCursor;
 import com.swarmer.finance.models.TransactionType;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.bitcoinj.base.Base58;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.security.crypto.codec.Hex;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.RestClient;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.net.URI;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 
 @Service
 public class TronService {
@@ -31,30 +30,24 @@ public class TronService {
     private static final BigDecimal USDT_DECIMALS = new BigDecimal("1000000"); // 6 decimals
     private static final int LIMIT = 200;
 
-    private final RestTemplate restTemplate;
+    private final RestClient restClient;
     private final String apiUrl;
-    private final String apiKey;
 
-    public TronService(
+    public TronService(RestClient blockchainRestClient,
             @Value("${tron.api.url:https://api.trongrid.io}") String apiUrl,
             @Value("${tron.api.key:}") String apiKey) {
-        this.restTemplate = new RestTemplate();
+        var builder = blockchainRestClient.mutate();
+        if (!apiKey.isEmpty()) {
+            builder.defaultHeader("TRON-PRO-API-KEY", apiKey);
+        }
+        this.restClient = builder.build();
         this.apiUrl = apiUrl;
-        this.apiKey = apiKey;
     }
 
     public TronWalletBalanceDto getWalletBalance(String address) {
         try {
             // Get TRX balance
-            var headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            if (!apiKey.isEmpty()) {
-                headers.set("TRON-PRO-API-KEY", apiKey);
-            }
-
-            var accountResponse = restTemplate.getForObject(
-                    apiUrl + "/v1/accounts/" + address,
-                    JsonNode.class);
+            var accountResponse = get(URI.create(apiUrl + "/v1/accounts/" + address));
 
             BigDecimal trxBalance = BigDecimal.ZERO;
             BigDecimal usdtBalance = BigDecimal.ZERO;
@@ -85,25 +78,27 @@ public class TronService {
         }
     }
 
-    public List<ImportDto> getTrxTransactions(String address, Optional<Transaction> lastTransaction) {
+    /**
+     * Returns the confirmed TRX transfers and freezes in blocks after the cursor.
+     */
+    public WalletHistory getTrxTransactions(String address, WalletSyncCursor since) {
         try {
-            var headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            if (!apiKey.isEmpty()) {
-                headers.set("TRON-PRO-API-KEY", apiKey);
-            }
-
             List<ImportDto> result = new ArrayList<>();
             var nextUrl = apiUrl + "/v1/accounts/" + address + "/transactions/?limit=" + LIMIT + "&only_confirmed=true";
-            if (lastTransaction != null && lastTransaction.isPresent()) {
-                var lastTimestamp = lastTransaction.get().getOpdate().atZone(ZoneId.systemDefault()).toInstant()
-                        .toEpochMilli();
-                nextUrl += "&min_timestamp=" + lastTimestamp;
+            // blocks are confirmed as a whole, so nothing new can appear in the last one seen
+            if (since.blockTimestamp() != null) {
+                nextUrl += "&min_timestamp=" + (since.blockTimestamp() + 1);
             }
+            var cursor = since;
             for (;;) {
-                var transactionsResponse = restTemplate.getForObject(nextUrl, JsonNode.class);
+                var transactionsResponse = get(URI.create(nextUrl));
                 if (transactionsResponse != null && transactionsResponse.has("data")) {
                     for (JsonNode transaction : transactionsResponse.get("data")) {
+                        cursor = cursor.advance(
+                                transaction.has("blockNumber") ? transaction.get("blockNumber").asLong() : null,
+                                transaction.has("block_timestamp") ? transaction.get("block_timestamp").asLong()
+                                        : null,
+                                transaction.path("txID").asText(null));
                         if (transaction.has("raw_data") && transaction.get("raw_data").has("contract")) {
                             var contract = transaction.get("raw_data").get("contract").get(0);
                             if (contract.has("parameter") && contract.get("parameter").has("value")) {
@@ -183,37 +178,36 @@ public class TronService {
                 }
                 break;
             }
-            return result;
+            return new WalletHistory(result, cursor);
         } catch (Exception e) {
             throw new RuntimeException("Failed to get TRX transactions: " + e.getMessage(), e);
         }
     }
 
-    public List<ImportDto> getContractTransactions(String address, Optional<Transaction> lastTransaction) {
+    /**
+     * Returns the confirmed USDT transfers in blocks after the cursor.
+     */
+    public WalletHistory getContractTransactions(String address, WalletSyncCursor since) {
         if (address == null || address.isEmpty()) {
             throw new IllegalArgumentException("Address cannot be null or empty");
         }
         try {
-            var headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            if (!apiKey.isEmpty()) {
-                headers.set("TRON-PRO-API-KEY", apiKey);
-            }
-
             List<ImportDto> result = new ArrayList<>();
             var nextUrl = apiUrl + "/v1/accounts/" + address + "/transactions/trc20/?limit=" + LIMIT
                     + "&only_confirmed=true";
-            if (lastTransaction != null && lastTransaction.isPresent()) {
-                var lastTimestamp = lastTransaction.get().getOpdate().atZone(ZoneId.systemDefault()).toInstant()
-                        .toEpochMilli();
-                nextUrl += "&min_timestamp=" + lastTimestamp;
+            // blocks are confirmed as a whole, so nothing new can appear in the last one seen
+            if (since.blockTimestamp() != null) {
+                nextUrl += "&min_timestamp=" + (since.blockTimestamp() + 1);
             }
+            var cursor = since;
             for (;;) {
-                var transactionsResponse = restTemplate.getForObject(
-                        nextUrl,
-                        JsonNode.class);
+                var transactionsResponse = get(URI.create(nextUrl));
                 if (transactionsResponse != null && transactionsResponse.has("data")) {
                     for (JsonNode transaction : transactionsResponse.get("data")) {
+                        cursor = cursor.advance(null,
+                                transaction.has("block_timestamp") ? transaction.get("block_timestamp").asLong()
+                                        : null,
+                                transaction.path("transaction_id").asText(null));
                         if (transaction.has("value") && transaction.has("token_info")) {
                             var tokenInfo = transaction.get("token_info");
                             var symbol = tokenInfo.get("symbol").asText();
@@ -266,12 +260,16 @@ public class TronService {
                 }
                 break;
             }
-            return result;
+            return new WalletHistory(result, cursor);
         } catch (Exception e) {
             throw new RuntimeException("Failed to get contract transactions: " + e.getMessage(), e);
         }
     }
 
+    private JsonNode get(URI uri) {
+        return restClient.get().uri(uri).retrieve().body(JsonNode.class);
+    }
+
     private String encode58(String hexString) {
         byte[] input = Hex.decode(hexString);
         byte[] hash0 = DigestUtils.sha256(input);
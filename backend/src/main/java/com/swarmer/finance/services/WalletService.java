@@ -2,98 +2,418 @@ package com.swarmer.finance.services;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.swarmer.finance.dto.ImportDto;
+import com.swarmer.finance.dto.WalletHistory;
+import com.swarmer.finance.dto.WalletSyncCursor;
+import com.swarmer.finance.dto.WalletSyncJobDto;
+import com.swarmer.finance.exceptions.ResourceNotFoundException;
 import com.swarmer.finance.models.Account;
-import com.swarmer.finance.models.Transaction;
-import com.swarmer.finance.repositories.AccountGroupRepository;
-import com.swarmer.finance.repositories.AclRepository;
+import com.swarmer.finance.models.WalletSyncItem;
+import com.swarmer.finance.models.WalletSyncJob;
+import com.swarmer.finance.models.WalletSyncState;
+import com.swarmer.finance.models.WalletSyncStatus;
+import com.swarmer.finance.repositories.WalletSyncJobRepository;
+import com.swarmer.finance.repositories.WalletSyncLeaseRepository;
+import com.swarmer.finance.repositories.WalletSyncStateRepository;
 
-import jakarta.transaction.Transactional;
+import jakarta.annotation.PreDestroy;
 
+/**
+ * Imports wallet history from the chains as persisted background jobs.
+ * Remote fetches of all wallets of a job run at once on virtual threads,
+ * limited per chain by permits shared between all jobs, and outside of any
+ * database transaction. The results of each wallet are matched and saved in
+ * a short transaction of their own, one wallet at a time. A job leases its
+ * wallets in wallet_sync_leases, so no other job, on this node or another
+ * one, syncs them at the same time. The leases are extended whenever the job
+ * makes progress, and a wallet whose lease was taken over is not saved. How
+ * far each wallet has been read is kept in wallet_sync_state and saved with
+ * the imported transactions. Jobs lost with the node running them, by a
+ * restart or a crash, are failed by a periodic sweep on any node once they
+ * are older than the lease, and finished jobs are deleted after the
+ * retention period.
+ */
 @Service
 public class WalletService {
-    private final AccountGroupRepository groupRepository;
-    private final AclRepository aclRepository;
+    private final AclService aclService;
     private final TronService tronService;
     private final BitcoinService bitcoinService;
     private final ImportService importService;
     private final TransactionService transactionService;
+    private final WalletSyncJobRepository jobRepository;
+    private final WalletSyncLeaseRepository leaseRepository;
+    private final WalletSyncStateRepository stateRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, Semaphore> chainLimits;
+    private final Duration leaseDuration;
+    private final Duration retention;
+    private final ExecutorService jobs = Executors.newVirtualThreadPerTaskExecutor();
+    private final String nodeId = UUID.randomUUID().toString();
 
-    public WalletService(AccountGroupRepository groupRepository, AclRepository aclRepository,
-            TronService tronService, BitcoinService bitcoinService, ImportService importService,
-            TransactionService transactionService) {
-        this.groupRepository = groupRepository;
-        this.aclRepository = aclRepository;
+    public WalletService(AclService aclService, TronService tronService, BitcoinService bitcoinService, ImportService importService,
+            TransactionService transactionService, WalletSyncJobRepository jobRepository,
+            WalletSyncLeaseRepository leaseRepository, WalletSyncStateRepository stateRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${wallet.sync.concurrency.trc20:4}") int trc20Concurrency,
+            @Value("${wallet.sync.concurrency.btc:2}") int btcConcurrency,
+            @Value("${wallet.sync.lease:PT30M}") Duration leaseDuration,
+            @Value("${wallet.sync.retention:P30D}") Duration retention) {
+        this.aclService = aclService;
         this.tronService = tronService;
         this.bitcoinService = bitcoinService;
         this.importService = importService;
         this.transactionService = transactionService;
+        this.jobRepository = jobRepository;
+        this.leaseRepository = leaseRepository;
+        this.stateRepository = stateRepository;
+        this.leaseDuration = leaseDuration;
+        this.retention = retention;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chainLimits = Map.of(
+                "trc20", new Semaphore(trc20Concurrency, true),
+                "btc", new Semaphore(btcConcurrency, true));
     }
 
-    @Transactional
+    /**
+     * Creates a job for the user's wallets and runs it in the background.
+     */
+    public WalletSyncJobDto submitSync(Long userId, Collection<Long> accountIdsFilter, boolean fullScan) {
+        var job = createJob(userId, accountIdsFilter, fullScan);
+        jobs.submit(() -> runJob(job.id(), userId));
+        return job;
+    }
+
+    public WalletSyncJobDto getSync(Long jobId, Long userId) {
+        return transactionTemplate.execute(status -> jobRepository.findByIdAndOwnerId(jobId, userId)
+                .map(WalletSyncJobDto::fromEntity)
+                .orElseThrow(() -> new ResourceNotFoundException("Resource not found with id: " + jobId)));
+    }
+
+    /**
+     * Runs a job on the calling thread and returns the number of imported
+     * transactions.
+     */
     public long importWallets(Long userId, Collection<Long> accountIdsFilter, Boolean fullScan) {
-        long count = 0;
-        var userGroups = groupRepository.findByOwnerIdOrderById(userId);
-        var sharedGroups = aclRepository.findByUserIdOrderByGroupId(userId).stream()
-                .map(acl -> acl.getGroup())
-                .filter(group -> !group.getOwner().getId().equals(userId))
-                .toList();
-        var wallets = Stream.concat(userGroups.stream(), sharedGroups.stream())
-                .flatMap(group -> group.getAccounts().stream())
+        var job = createJob(userId, accountIdsFilter, Boolean.TRUE.equals(fullScan));
+        runJob(job.id(), userId);
+        var result = getSync(job.id(), userId);
+        if (result.status() == WalletSyncStatus.FAILED) {
+            throw new RuntimeException(result.error());
+        }
+        return result.imported();
+    }
+
+    /**
+     * Runs an incremental job for the owner's wallets on the calling thread,
+     * unless a node already took the owner within the hold period, so the
+     * scheduled rounds of all nodes create one job per owner and period.
+     *
+     * @return false when the owner was taken and no job was created
+     */
+    public boolean importWalletsOnce(Long ownerId, Collection<Long> accountIds, Duration hold) {
+        var taken = transactionTemplate.execute(
+                status -> leaseRepository.acquireOwner(ownerId, nodeId, hold.toSeconds()) > 0);
+        if (!Boolean.TRUE.equals(taken)) {
+            return false;
+        }
+        importWallets(ownerId, accountIds, false);
+        return true;
+    }
+
+    /**
+     * Fails the jobs nobody has worked on for longer than the lease, with
+     * their pending and running wallets, and releases their leases. Their
+     * node has stopped, or their leases expired and other jobs may already
+     * sync the wallets. Runs at startup and then periodically.
+     */
+    @Scheduled(fixedDelayString = "${wallet.sync.sweep-interval:PT5M}")
+    public void failAbandonedJobs() {
+        var now = LocalDateTime.now();
+        var before = now.minus(leaseDuration);
+        var error = "Job abandoned, no progress within " + leaseDuration;
+        transactionTemplate.executeWithoutResult(status -> {
+            leaseRepository.releaseStale(before);
+            jobRepository.failStaleItems(before, error, now);
+            jobRepository.failStale(before, error, now);
+        });
+    }
+
+    /**
+     * Deletes the jobs finished longer than the retention period ago.
+     */
+    @Scheduled(fixedDelayString = "${wallet.sync.sweep-interval:PT5M}")
+    public void deleteFinishedJobs() {
+        var before = LocalDateTime.now().minus(retention);
+        transactionTemplate.executeWithoutResult(status -> jobRepository.deleteFinishedBefore(before));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.shutdownNow();
+    }
+
+    private WalletSyncJobDto createJob(Long userId, Collection<Long> accountIdsFilter, boolean fullScan) {
+        return transactionTemplate.execute(status -> {
+            var job = new WalletSyncJob();
+            job.setOwnerId(userId);
+            job.setNodeId(nodeId);
+            job.setFullScan(fullScan);
+            getWallets(userId).stream()
+                    .filter(account -> accountIdsFilter == null || accountIdsFilter.isEmpty()
+                            || accountIdsFilter.contains(account.getId()))
+                    .forEach(account -> {
+                        var item = new WalletSyncItem();
+                        item.setJob(job);
+                        item.setAccountId(account.getId());
+                        job.getItems().add(item);
+                    });
+            return WalletSyncJobDto.fromEntity(jobRepository.save(job));
+        });
+    }
+
+    private List<Account> getWallets(Long userId) {
+        return aclService.getAccounts(userId).stream()
                 .filter(account -> !account.isDeleted())
                 .filter(account -> account.getChain() != null && !account.getChain().isBlank())
                 .filter(account -> account.getAddress() != null && !account.getAddress().isBlank()).toList();
-        var filtered = wallets.stream()
-                .filter(account -> (accountIdsFilter == null || accountIdsFilter.isEmpty()
-                        || accountIdsFilter.contains(account.getId())) && account.getChain() != null)
-                .toList();
-        var balances = transactionService.getBalances(filtered.stream().map(Account::getId).toList(), null, null, null);
-
-        for (var account : filtered) {
-            var debit = balances.stream().filter(b -> account.getId().equals(b.accountId()))
-                    .map(b -> b.debit())
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            var credit = balances.stream().filter(b -> account.getId().equals(b.recipientId()))
-                    .map(b -> b.credit())
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            var balance = account.getStartBalance().add(credit).subtract(debit).setScale(account.getScale(),
-                    RoundingMode.HALF_DOWN);
-            var records = importAccount(account, balance, userId, fullScan);
-            if (records == null || records.isEmpty()) {
-                continue;
+    }
+
+    private void runJob(Long jobId, Long userId) {
+        try {
+            var plan = transactionTemplate.execute(status -> startJob(jobId, userId));
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                var fetches = new ArrayList<Future<WalletHistory>>();
+                plan.wallets().forEach(w -> fetches.add(executor.submit(() -> fetchAccount(w.account(), w.balance(), w.since()))));
+                // saving a wallet overlaps with the fetches still running
+                for (var i = 0; i < fetches.size(); i++) {
+                    var account = plan.wallets().get(i).account();
+                    try {
+                        var history = await(fetches.get(i));
+                        transactionTemplate.executeWithoutResult(
+                                status -> saveWallet(jobId, account, history, plan.walletIds(), userId));
+                    } catch (RuntimeException e) {
+                        transactionTemplate.executeWithoutResult(status -> updateItem(jobId, account.getId(), item -> {
+                            item.setStatus(WalletSyncStatus.FAILED);
+                            item.setError(e.getMessage());
+                        }));
+                    }
+                }
             }
-            importService.importWaletRecords(records, account, wallets.stream().map(Account::getId).toList(), userId);
+            finishJob(jobId, WalletSyncStatus.DONE, null);
+        } catch (RuntimeException e) {
+            finishJob(jobId, WalletSyncStatus.FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * Marks the job as running and reads what the fetches need: balances to
+     * compare with the chain and the cursors to resume from. Wallets the user lost access to are failed right away, wallets
+     * leased by another job are skipped.
+     */
+    private JobPlan startJob(Long jobId, Long userId) {
+        var job = jobRepository.findById(jobId).orElseThrow();
+        var wallets = getWallets(userId);
+        var walletIds = wallets.stream().map(Account::getId).toList();
+        var itemIds = new HashSet<Long>();
+        job.getItems().forEach(item -> itemIds.add(item.getAccountId()));
+        var leased = new HashSet<Long>();
+        wallets.stream()
+                .filter(account -> itemIds.contains(account.getId()))
+                .filter(account -> leaseRepository.acquire(account.getId(), holder(jobId),
+                        leaseDuration.toSeconds()) > 0)
+                .forEach(account -> leased.add(account.getId()));
+        var accounts = wallets.stream().filter(account -> leased.contains(account.getId())).toList();
+        var balances = transactionService.getAccountBalances(accounts.stream().map(Account::getId).toList(), null);
+        var states = new HashMap<Long, WalletSyncCursor>();
+        stateRepository.findAllById(leased).forEach(state -> states.put(state.getAccountId(), state.toCursor()));
+        var now = LocalDateTime.now();
+        job.getItems().forEach(item -> {
+            if (!walletIds.contains(item.getAccountId())) {
+                item.setStatus(WalletSyncStatus.FAILED);
+                item.setError("Wallet not found");
+            } else if (!leased.contains(item.getAccountId())) {
+                item.setStatus(WalletSyncStatus.SKIPPED);
+                item.setError("Wallet is synced by another job");
+            } else {
+                item.setStatus(WalletSyncStatus.RUNNING);
+            }
+            item.setUpdated(now);
+        });
+        job.setStatus(WalletSyncStatus.RUNNING);
+        job.setUpdated(now);
+        var plan = accounts.stream()
+                .map(account -> new WalletFetch(account,
+                        balances.balance(account).setScale(account.getScale(), RoundingMode.HALF_DOWN),
+                        job.isFullScan() ? WalletSyncCursor.NONE : cursor(account, states)))
+                .toList();
+        return new JobPlan(plan, walletIds);
+    }
+
+    /**
+     * Returns the persisted cursor of the wallet. Tron wallets synced before
+     * cursors were kept resume from the last imported operation, including
+     * it, as they always did.
+     */
+    private WalletSyncCursor cursor(Account account, Map<Long, WalletSyncCursor> states) {
+        var cursor = states.get(account.getId());
+        if (cursor != null) {
+            return cursor;
+        }
+        if ("trc20".equals(account.getChain())) {
+            return transactionService.findByMaxOpdate(account.getId())
+                    .map(t -> new WalletSyncCursor(null,
+                            t.getOpdate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1, null))
+                    .orElse(WalletSyncCursor.NONE);
+        }
+        return WalletSyncCursor.NONE;
+    }
+
+    /**
+     * Saves what was fetched for the wallet, unless the job was failed by the
+     * sweep or lost its lease on the wallet to another job while fetching.
+     */
+    private void saveWallet(Long jobId, Account account, WalletHistory history, List<Long> walletIds,
+            Long userId) {
+        if (jobRepository.findById(jobId).orElseThrow().getFinished() != null) {
+            return;
+        }
+        if (leaseRepository.extend(account.getId(), holder(jobId), leaseDuration.toSeconds()) == 0) {
+            updateItem(jobId, account.getId(), item -> {
+                item.setStatus(WalletSyncStatus.FAILED);
+                item.setError("Wallet lease lost to another job");
+            });
+            return;
+        }
+        var records = history == null ? null : history.records();
+        var imported = 0;
+        if (records != null && !records.isEmpty()) {
+            importService.importWaletRecords(records, account, walletIds, userId);
             transactionService.saveImport(userId, account.getId(), records);
-            count += records.stream().filter(ImportDto::isSelected).count();
+            imported = (int) records.stream().filter(ImportDto::isSelected).count();
         }
-        return count;
+        if (history != null && history.cursor() != WalletSyncCursor.NONE) {
+            var cursor = history.cursor();
+            stateRepository.save(new WalletSyncState(account.getId(), cursor.blockHeight(), cursor.blockTimestamp(),
+                    cursor.fingerprint(), LocalDateTime.now()));
+        }
+        var fetched = records == null ? 0 : records.size();
+        var count = imported;
+        updateItem(jobId, account.getId(), item -> {
+            item.setStatus(WalletSyncStatus.DONE);
+            item.setFetched(fetched);
+            item.setImported(count);
+        });
+    }
+
+    /**
+     * Updates the job's item of the wallet. Every update is progress of the
+     * job, so the leases of its remaining wallets are extended with it. The
+     * items of a job failed by the sweep are left as the sweep failed them.
+     */
+    private void updateItem(Long jobId, Long accountId, Consumer<WalletSyncItem> update) {
+        var job = jobRepository.findById(jobId).orElseThrow();
+        if (job.getFinished() != null) {
+            return;
+        }
+        leaseRepository.extendAll(holder(jobId), leaseDuration.toSeconds());
+        var now = LocalDateTime.now();
+        job.getItems().stream().filter(item -> item.getAccountId().equals(accountId)).forEach(item -> {
+            update.accept(item);
+            item.setUpdated(now);
+        });
+        job.setUpdated(now);
     }
 
-    private List<ImportDto> importAccount(Account account, BigDecimal balance, Long userId, Boolean fullScan) {
-        List<ImportDto> records = null;
-        Optional<Transaction> last = fullScan ? Optional.empty() : transactionService.findByMaxOpdate(account.getId());
+    /**
+     * Finishes the job and releases its leases. A job the sweep failed
+     * meanwhile keeps the sweep's outcome.
+     */
+    private void finishJob(Long jobId, WalletSyncStatus status, String error) {
+        transactionTemplate.executeWithoutResult(s -> {
+            leaseRepository.releaseAll(holder(jobId));
+            jobRepository.finish(jobId, status.name(), error, LocalDateTime.now());
+        });
+    }
+
+    private String holder(Long jobId) {
+        return nodeId + "/" + jobId;
+    }
+
+    private WalletHistory fetchAccount(Account account, BigDecimal balance, WalletSyncCursor since)
+            throws InterruptedException {
+        var limit = chainLimits.get(account.getChain());
+        if (limit == null) {
+            return null;
+        }
+        limit.acquire();
+        try {
+            return importAccount(account, balance, since);
+        } finally {
+            limit.release();
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Wallet import interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private WalletHistory importAccount(Account account, BigDecimal balance, WalletSyncCursor since) {
+        WalletHistory history = null;
         if ("trc20".equals(account.getChain()) && account.getAddress() != null) {
             var wallet = tronService.getWalletBalance(account.getAddress());
             if (!wallet.trxBalance().equals(balance) && "TRX".equalsIgnoreCase(account.getCurrency())) {
-                records = tronService.getTrxTransactions(wallet.hexAddress(), last);
+                history = tronService.getTrxTransactions(wallet.hexAddress(), since);
             } else if (!wallet.usdtBalance().equals(balance) && "USDT".equalsIgnoreCase(account.getCurrency())) {
-                records = tronService.getContractTransactions(wallet.address(), last).stream()
-                        .filter(r -> r.getCurrency().equals(account.getCurrency())).toList();
+                var contract = tronService.getContractTransactions(wallet.address(), since);
+                history = new WalletHistory(contract.records().stream()
+                        .filter(r -> r.getCurrency().equals(account.getCurrency())).toList(), contract.cursor());
             }
         } else if ("btc".equals(account.getChain()) && "BTC".equalsIgnoreCase(account.getCurrency())
                 && account.getAddress() != null) {
             var wallet = bitcoinService.getWalletBalance(account.getAddress());
             if (!wallet.btcBalance().equals(balance)) {
-                records = bitcoinService.getTransactions(wallet.address(), last);
+                history = bitcoinService.getTransactions(wallet.address(), since);
             }
         }
-        return records;
+        return history;
+    }
+
+    private record WalletFetch(Account account, BigDecimal balance, WalletSyncCursor since) {
+    }
+
+    private record JobPlan(List<WalletFetch> wallets, List<Long> walletIds) {
     }
 }
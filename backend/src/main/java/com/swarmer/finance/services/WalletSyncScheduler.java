@@ -0,0 +1,77 @@
+package com.swarmer.finance.services;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.swarmer.finance.dto.AccessibleAccount;
+import com.swarmer.finance.repositories.AccountRepository;
+
+/**
+ * Keeps wallets fresh without anyone pressing a button: every interval each
+ * owner gets an incremental sync job for the wallets of their own groups.
+ * Owners are synced one after another with a pause in between to stay within
+ * the API quotas, and the pauses of a round together never exceed the
+ * interval. An owner is leased for the interval before its job is created,
+ * so of all nodes of a deployment only one syncs the owner per interval.
+ * Off unless wallet.sync.schedule.enabled is true.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.sync.schedule.enabled", havingValue = "true")
+public class WalletSyncScheduler {
+    private static final Logger log = LoggerFactory.getLogger(WalletSyncScheduler.class);
+
+    private final WalletService walletService;
+    private final AccountRepository accountRepository;
+    private final Duration interval;
+    private final Duration stagger;
+
+    public WalletSyncScheduler(WalletService walletService, AccountRepository accountRepository,
+            @Value("${wallet.sync.schedule.interval:PT30M}") Duration interval,
+            @Value("${wallet.sync.schedule.stagger:PT10S}") Duration stagger) {
+        this.walletService = walletService;
+        this.accountRepository = accountRepository;
+        this.interval = interval;
+        this.stagger = stagger;
+    }
+
+    @Scheduled(initialDelayString = "${wallet.sync.schedule.initial-delay:PT1M}",
+            fixedDelayString = "${wallet.sync.schedule.interval:PT30M}")
+    public void syncAll() {
+        var wallets = accountRepository.findWallets().stream()
+                .collect(Collectors.groupingBy(AccessibleAccount::ownerId, LinkedHashMap::new,
+                        Collectors.mapping(AccessibleAccount::id, Collectors.toList())));
+        if (wallets.isEmpty()) {
+            return;
+        }
+        var pause = min(stagger, interval.dividedBy(wallets.size()));
+        for (var entry : wallets.entrySet()) {
+            try {
+                if (!walletService.importWalletsOnce(entry.getKey(), entry.getValue(), interval)) {
+                    // another node syncs this owner in the current interval
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                // the failure is kept in the job, the other owners go on
+                log.warn("Scheduled wallet sync of owner {} failed", entry.getKey(), e);
+            }
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+}
@@ -0,0 +1,20 @@
+-- Monthly debit/credit totals per account pair and category for the summaries
+CREATE TABLE IF NOT EXISTS monthly_rollups (
+	id bigserial primary key,
+	account_id bigint references accounts (id) on delete cascade,
+	recipient_id bigint references accounts (id) on delete cascade,
+	category_id bigint references categories (id) on delete cascade,
+	period date not null,
+	debit numeric(24, 0) not null default 0,
+	credit numeric(24, 0) not null default 0,
+	opdate timestamp
+);
+
+CREATE INDEX IF NOT EXISTS monthly_rollups_account_idx ON monthly_rollups (account_id, period);
+CREATE INDEX IF NOT EXISTS monthly_rollups_recipient_idx ON monthly_rollups (recipient_id, period);
+CREATE INDEX IF NOT EXISTS monthly_rollups_category_idx ON monthly_rollups (category_id);
+
+insert into monthly_rollups (account_id, recipient_id, category_id, period, debit, credit, opdate)
+select account_id, recipient_id, category_id, cast(date_trunc('month', opdate) as date), sum(debit), sum(credit), max(opdate)
+from transactions
+group by account_id, recipient_id, category_id, cast(date_trunc('month', opdate) as date);
@@ -0,0 +1,39 @@
+-- Reconciliation by assertions: the balance of the account was X at the end of opdate
+CREATE TABLE IF NOT EXISTS balance_assertions (
+	id bigserial primary key,
+	owner_id integer not null references users (id),
+	account_id bigint not null references accounts (id) on delete cascade,
+	opdate timestamp not null,
+	balance numeric(24, 0) not null,
+	created timestamp not null default now(),
+	updated timestamp not null default now(),
+	unique (account_id, opdate)
+);
+
+-- every correction becomes an assertion of the balance it produced at the end of its operation date
+insert into balance_assertions (owner_id, account_id, opdate, balance, created, updated)
+select c.owner_id, c.account_id, c.opdate,
+	coalesce(a.start_balance, 0) + coalesce((select sum(p.amount) from postings p
+		where p.account_id = c.account_id and p.opdate <= c.opdate), 0),
+	c.created, c.updated
+from (select distinct on (coalesce(account_id, recipient_id), opdate) owner_id,
+		coalesce(account_id, recipient_id) as account_id, opdate, created, updated
+	from transactions where category_id = 3
+	order by coalesce(account_id, recipient_id), opdate, id desc) c
+join accounts a on a.id = c.account_id;
+
+delete from transactions where category_id = 3;
+
+-- recalculate the aggregates without the correction rows
+delete from balance_checkpoints;
+insert into balance_checkpoints (account_id, period, debit, credit, opdate)
+select account_id, cast(date_trunc('month', opdate) as date),
+	sum(case when side = 0 then -amount else 0 end), sum(case when side = 1 then amount else 0 end), max(opdate)
+from postings
+group by account_id, cast(date_trunc('month', opdate) as date);
+
+delete from monthly_rollups;
+insert into monthly_rollups (account_id, recipient_id, category_id, period, debit, credit, opdate)
+select account_id, recipient_id, category_id, cast(date_trunc('month', opdate) as date), sum(debit), sum(credit), max(opdate)
+from transactions
+group by account_id, recipient_id, category_id, cast(date_trunc('month', opdate) as date);
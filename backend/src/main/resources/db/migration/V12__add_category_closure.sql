@@ -0,0 +1,59 @@
+-- Category hierarchy as a closure table: one row per ancestor and descendant,
+-- including the category itself at depth 0. ancestor_level is the depth of the
+-- ancestor below its root, so level 1 ancestors are the top user categories.
+CREATE TABLE IF NOT EXISTS category_closure (
+	ancestor_id bigint not null references categories (id) on delete cascade,
+	descendant_id bigint not null references categories (id) on delete cascade,
+	depth integer not null,
+	ancestor_level integer not null,
+	primary key (ancestor_id, descendant_id)
+);
+
+CREATE INDEX IF NOT EXISTS category_closure_descendant_idx ON category_closure (descendant_id, ancestor_level);
+
+WITH RECURSIVE tree AS (
+	SELECT id, id AS ancestor_id, 0 AS depth FROM categories
+	UNION ALL
+	SELECT t.id, c.parent_id, t.depth + 1 FROM tree t JOIN categories c ON c.id = t.ancestor_id
+	WHERE c.parent_id IS NOT NULL
+), levels AS (
+	SELECT id, max(depth) AS level FROM tree GROUP BY id
+)
+INSERT INTO category_closure (ancestor_id, descendant_id, depth, ancestor_level)
+SELECT t.ancestor_id, t.id, t.depth, l.level FROM tree t JOIN levels l ON l.id = t.ancestor_id;
+
+CREATE OR REPLACE FUNCTION sync_category_closure() RETURNS trigger AS $$
+DECLARE
+	parent_level integer;
+	old_level integer;
+BEGIN
+	IF TG_OP = 'UPDATE' AND OLD.parent_id IS NOT DISTINCT FROM NEW.parent_id THEN
+		RETURN NULL;
+	END IF;
+	SELECT ancestor_level INTO parent_level FROM category_closure
+	WHERE ancestor_id = NEW.parent_id AND descendant_id = NEW.parent_id;
+	IF TG_OP = 'INSERT' THEN
+		INSERT INTO category_closure (ancestor_id, descendant_id, depth, ancestor_level)
+		VALUES (NEW.id, NEW.id, 0, coalesce(parent_level + 1, 0));
+	ELSE
+		-- detach the subtree from its former ancestors and shift its levels
+		DELETE FROM category_closure c
+		USING category_closure s
+		WHERE s.ancestor_id = NEW.id AND c.descendant_id = s.descendant_id
+			AND c.ancestor_id NOT IN (SELECT descendant_id FROM category_closure WHERE ancestor_id = NEW.id);
+		SELECT ancestor_level INTO old_level FROM category_closure
+		WHERE ancestor_id = NEW.id AND descendant_id = NEW.id;
+		UPDATE category_closure SET ancestor_level = ancestor_level - old_level + coalesce(parent_level + 1, 0)
+		WHERE ancestor_id IN (SELECT descendant_id FROM category_closure WHERE ancestor_id = NEW.id);
+	END IF;
+	INSERT INTO category_closure (ancestor_id, descendant_id, depth, ancestor_level)
+	SELECT a.ancestor_id, s.descendant_id, a.depth + s.depth + 1, a.ancestor_level
+	FROM category_closure a, category_closure s
+	WHERE a.descendant_id = NEW.parent_id AND s.ancestor_id = NEW.id;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER categories_closure
+	AFTER INSERT OR UPDATE OF parent_id ON categories
+	FOR EACH ROW EXECUTE FUNCTION sync_category_closure();
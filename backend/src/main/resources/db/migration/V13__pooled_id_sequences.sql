@@ -0,0 +1,8 @@
+-- Hibernate takes ids for these tables in blocks of 50 from the sequences
+-- (pooled optimizer), so inserts no longer need a round trip each and can be
+-- batched. Rows inserted with the column default still get unique ids: each
+-- nextval is the upper end of a block nobody else uses.
+ALTER SEQUENCE transactions_id_seq INCREMENT BY 50;
+ALTER SEQUENCE categories_id_seq INCREMENT BY 50;
+ALTER SEQUENCE rules_id_seq INCREMENT BY 50;
+ALTER SEQUENCE accounts_id_seq INCREMENT BY 50;
@@ -0,0 +1,25 @@
+-- Wallet imports run as background jobs, polled by id; one item per wallet
+CREATE TABLE IF NOT EXISTS wallet_sync_jobs (
+	id bigserial primary key,
+	owner_id integer not null references users (id) on delete cascade,
+	full_scan boolean not null default false,
+	status text not null,
+	error text,
+	created timestamp not null default now(),
+	updated timestamp not null default now(),
+	finished timestamp
+);
+
+CREATE INDEX IF NOT EXISTS wallet_sync_jobs_owner_idx ON wallet_sync_jobs (owner_id, id);
+
+CREATE TABLE IF NOT EXISTS wallet_sync_items (
+	id bigserial primary key,
+	job_id bigint not null references wallet_sync_jobs (id) on delete cascade,
+	account_id bigint not null references accounts (id) on delete cascade,
+	status text not null,
+	fetched integer not null default 0,
+	imported integer not null default 0,
+	error text,
+	updated timestamp not null default now(),
+	unique (job_id, account_id)
+);
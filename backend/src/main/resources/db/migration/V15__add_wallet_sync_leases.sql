@@ -0,0 +1,9 @@
+-- Wallets taken by a running sync job, so the nodes of a deployment never
+-- sync the same wallet at once; an expired lease can be taken over
+CREATE TABLE IF NOT EXISTS wallet_sync_leases (
+	account_id bigint primary key references accounts (id) on delete cascade,
+	holder text not null,
+	expires timestamp not null
+);
+
+CREATE INDEX IF NOT EXISTS wallet_sync_leases_holder_idx ON wallet_sync_leases (holder);
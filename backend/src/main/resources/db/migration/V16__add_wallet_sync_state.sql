@@ -0,0 +1,17 @@
+-- How far the history of each wallet has been imported: the highest block
+-- height and block timestamp (epoch milliseconds) seen and the id of the
+-- newest transaction. Written in the transaction that saves the imported rows.
+CREATE TABLE IF NOT EXISTS wallet_sync_state (
+	account_id bigint primary key references accounts (id) on delete cascade,
+	block_height bigint,
+	block_timestamp bigint,
+	fingerprint text,
+	updated timestamp not null default now()
+);
+
+-- bitcoin imports kept their resume point in the details of the transactions
+INSERT INTO wallet_sync_state (account_id, block_height)
+SELECT a.id, max(cast(substring(t.details from 'block_height: (\d+)') as bigint))
+FROM accounts a JOIN transactions t ON t.account_id = a.id OR t.recipient_id = a.id
+WHERE a.chain = 'btc' AND t.details LIKE '%block_height: %'
+GROUP BY a.id;
@@ -0,0 +1,12 @@
+-- One rollup row per account pair, category and month. Concurrent refreshes
+-- of an account could insert a month twice, so the rollups are rebuilt from
+-- transactions before the key is added.
+DELETE FROM monthly_rollups;
+
+insert into monthly_rollups (account_id, recipient_id, category_id, period, debit, credit, opdate)
+select account_id, recipient_id, category_id, cast(date_trunc('month', opdate) as date), sum(debit), sum(credit), max(opdate)
+from transactions
+group by account_id, recipient_id, category_id, cast(date_trunc('month', opdate) as date);
+
+ALTER TABLE monthly_rollups ADD CONSTRAINT monthly_rollups_key
+	UNIQUE NULLS NOT DISTINCT (account_id, recipient_id, category_id, period);
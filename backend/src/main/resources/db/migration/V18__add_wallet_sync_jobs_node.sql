@@ -0,0 +1,6 @@
+-- Node running the job; its leases are held as '<node_id>/<job id>'. Jobs
+-- left unfinished by a node that stopped are failed once they are older
+-- than the lease, found through the partial index.
+ALTER TABLE wallet_sync_jobs ADD COLUMN node_id text;
+
+CREATE INDEX IF NOT EXISTS wallet_sync_jobs_unfinished_idx ON wallet_sync_jobs (updated) WHERE finished IS NULL;
@@ -0,0 +1,10 @@
+-- Owners taken by a scheduled sync round, so of all nodes only one creates a
+-- job for an owner per interval; the lease is kept until it expires
+CREATE TABLE IF NOT EXISTS wallet_sync_owner_leases (
+	owner_id integer primary key references users (id) on delete cascade,
+	holder text not null,
+	expires timestamp not null
+);
+
+-- finished jobs are deleted after the retention period
+CREATE INDEX IF NOT EXISTS wallet_sync_jobs_finished_idx ON wallet_sync_jobs (finished) WHERE finished IS NOT NULL;
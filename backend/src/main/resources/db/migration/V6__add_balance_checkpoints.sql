@@ -0,0 +1,16 @@
+-- Per-account monthly debit/credit totals used as balance checkpoints
+CREATE TABLE IF NOT EXISTS balance_checkpoints (
+	account_id bigint not null references accounts (id) on delete cascade,
+	period date not null,
+	debit numeric(24, 0) not null default 0,
+	credit numeric(24, 0) not null default 0,
+	opdate timestamp,
+	primary key (account_id, period)
+);
+
+insert into balance_checkpoints (account_id, period, debit, credit, opdate)
+select account_id, cast(date_trunc('month', opdate) as date), sum(debit), sum(credit), max(opdate)
+from (select account_id, opdate, debit, 0 as credit from transactions where account_id is not null
+      union all
+      select recipient_id, opdate, 0, credit from transactions where recipient_id is not null) t
+group by account_id, cast(date_trunc('month', opdate) as date);
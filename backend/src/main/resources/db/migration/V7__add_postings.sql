@@ -0,0 +1,40 @@
+-- Double-entry postings: one row per account side of a transaction,
+-- side 0 is the debited account, side 1 is the credited recipient
+CREATE TABLE IF NOT EXISTS postings (
+	transaction_id bigint not null references transactions (id) on delete cascade,
+	side smallint not null,
+	account_id bigint not null references accounts (id) on delete cascade,
+	opdate timestamp not null,
+	amount numeric(24, 0) not null,
+	primary key (transaction_id, side)
+);
+
+CREATE INDEX IF NOT EXISTS postings_account_opdate_idx ON postings (account_id, opdate, transaction_id) INCLUDE (amount);
+
+CREATE OR REPLACE FUNCTION sync_postings() RETURNS trigger AS $$
+BEGIN
+	IF TG_OP <> 'INSERT' THEN
+		DELETE FROM postings WHERE transaction_id = OLD.id;
+	END IF;
+	IF TG_OP <> 'DELETE' THEN
+		IF NEW.account_id IS NOT NULL THEN
+			INSERT INTO postings (transaction_id, side, account_id, opdate, amount)
+			VALUES (NEW.id, 0, NEW.account_id, NEW.opdate, -NEW.debit);
+		END IF;
+		IF NEW.recipient_id IS NOT NULL THEN
+			INSERT INTO postings (transaction_id, side, account_id, opdate, amount)
+			VALUES (NEW.id, 1, NEW.recipient_id, NEW.opdate, NEW.credit);
+		END IF;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER transactions_postings
+	AFTER INSERT OR DELETE OR UPDATE OF opdate, account_id, debit, recipient_id, credit ON transactions
+	FOR EACH ROW EXECUTE FUNCTION sync_postings();
+
+insert into postings (transaction_id, side, account_id, opdate, amount)
+select id, 0, account_id, opdate, -debit from transactions where account_id is not null
+union all
+select id, 1, recipient_id, opdate, credit from transactions where recipient_id is not null;
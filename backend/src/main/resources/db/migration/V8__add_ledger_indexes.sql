@@ -0,0 +1,22 @@
+-- Indexes matched to the lookups of the services, primary keys aside
+
+-- owner scoped loads and deletes of backups and imports
+CREATE INDEX IF NOT EXISTS transactions_owner_idx ON transactions (owner_id);
+-- account and recipient sides, ordered the way pages and balances walk them
+CREATE INDEX IF NOT EXISTS transactions_account_opdate_idx ON transactions (account_id, opdate, id) INCLUDE (debit);
+CREATE INDEX IF NOT EXISTS transactions_recipient_opdate_idx ON transactions (recipient_id, opdate, id) INCLUDE (credit);
+-- category filters and category replacement on delete
+CREATE INDEX IF NOT EXISTS transactions_category_idx ON transactions (category_id);
+-- date ranges and keyset pages over all accounts
+CREATE INDEX IF NOT EXISTS transactions_opdate_idx ON transactions (opdate, id);
+
+CREATE INDEX IF NOT EXISTS accounts_group_idx ON accounts (group_id);
+CREATE INDEX IF NOT EXISTS account_groups_owner_idx ON account_groups (owner_id);
+-- the primary key (group_id, user_id) already covers lookups by group
+CREATE INDEX IF NOT EXISTS acl_user_idx ON acl (user_id);
+
+CREATE INDEX IF NOT EXISTS categories_owner_idx ON categories (owner_id, parent_id);
+CREATE INDEX IF NOT EXISTS categories_parent_idx ON categories (parent_id);
+
+CREATE INDEX IF NOT EXISTS rules_owner_idx ON rules (owner_id);
+CREATE INDEX IF NOT EXISTS rules_category_idx ON rules (category_id);
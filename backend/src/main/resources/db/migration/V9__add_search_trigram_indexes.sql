@@ -0,0 +1,6 @@
+-- Trigram indexes for the case-insensitive substring search of transactions
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS transactions_details_trgm_idx ON transactions USING gin (upper(details) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS transactions_party_trgm_idx ON transactions USING gin (upper(party) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS categories_name_trgm_idx ON categories USING gin (upper(name) gin_trgm_ops);
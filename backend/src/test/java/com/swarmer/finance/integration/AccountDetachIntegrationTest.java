@@ -0,0 +1,153 @@
+package com.swarmer.finance.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.swarmer.finance.services.CheckpointService;
+import com.swarmer.finance.services.TransactionService;
+
+/**
+ * Deleting the transactions of an account with transfers to an account that
+ * stays: the transfers are kept as one-sided rows of the remaining account,
+ * and its balance, checkpoints and rollups are the ones a rebuild computes.
+ */
+@SpringBootTest
+@Testcontainers
+public class AccountDetachIntegrationTest {
+    private static final String ROLLUPS = "select account_id, recipient_id, category_id, period, debit, credit, "
+            + "opdate from monthly_rollups";
+    private static final String AGGREGATED = "select account_id, recipient_id, category_id, "
+            + "cast(date_trunc('month', opdate) as date), sum(debit), sum(credit), max(opdate) from transactions "
+            + "group by account_id, recipient_id, category_id, cast(date_trunc('month', opdate) as date)";
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CheckpointService checkpointService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    private long walletId;
+    private long cardId;
+    private long incomingId;
+    private long outgoingId;
+
+    @BeforeEach
+    void setup() {
+        jdbcTemplate.execute("truncate users, categories, account_groups, accounts, acl, transactions, rules "
+                + "restart identity cascade");
+        jdbcTemplate.execute("insert into categories (id, name) values (1, 'Expense'), (2, 'Income'), "
+                + "(3, 'Correction')");
+        jdbcTemplate.execute("select setval('categories_id_seq', 3)");
+        var userId = jdbcTemplate.queryForObject(
+                "insert into users (email, name, password) values ('detach@test', 'Detach', 'x') returning id",
+                Long.class);
+        var groupId = jdbcTemplate.queryForObject(
+                "insert into account_groups (owner_id, name) values (?, 'Cash') returning id", Long.class, userId);
+        walletId = insertAccount(groupId, "Wallet", "EUR");
+        cardId = insertAccount(groupId, "Card", "USD");
+        insertTransaction(userId, "2024-01-02 10:00", null, walletId, 10000, 10000, 2L);
+        incomingId = insertTransaction(userId, "2024-01-10 10:00", cardId, walletId, 1000, 900, null);
+        outgoingId = insertTransaction(userId, "2024-02-05 10:00", walletId, cardId, 500, 550, null);
+        insertTransaction(userId, "2024-02-20 10:00", cardId, null, 300, 300, 1L);
+        checkpointService.rebuild(List.of(walletId, cardId));
+    }
+
+    @Test
+    void transfersBecomeOneSidedRows() {
+        var result = transactionService.deleteTransactionsByAccounts(List.of(cardId));
+
+        assertEquals(1, result.deleted());
+        assertEquals(2, result.converted());
+        assertEquals(2, jdbcTemplate.queryForObject("select count(*) from transactions", Integer.class));
+        var incoming = row(incomingId);
+        assertNull(incoming.get("account_id"));
+        assertEquals(walletId, ((Number) incoming.get("recipient_id")).longValue());
+        assertEquals("USD", incoming.get("currency"));
+        assertEquals("Cash Card", incoming.get("party"));
+        var outgoing = row(outgoingId);
+        assertEquals(walletId, ((Number) outgoing.get("account_id")).longValue());
+        assertNull(outgoing.get("recipient_id"));
+        assertEquals("USD", outgoing.get("currency"));
+        assertEquals("Cash Card", outgoing.get("party"));
+    }
+
+    @Test
+    void remainingAccountMatchesRebuild() {
+        transactionService.deleteTransactionsByAccounts(List.of(cardId));
+        var balance = balance();
+        var checkpoints = checkpoints();
+        var rollups = rollups();
+
+        checkpointService.rebuild(List.of(walletId));
+
+        // the income of 100.00, 9.00 from the card and 5.00 to it
+        assertEquals(0, new BigDecimal("10400").compareTo(balance));
+        assertEquals(0, balance().compareTo(balance));
+        assertEquals(checkpoints(), checkpoints);
+        assertEquals(rollups(), rollups);
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from ((" + ROLLUPS + " except all "
+                + AGGREGATED + ") union all (" + AGGREGATED + " except all " + ROLLUPS + ")) d", Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from balance_checkpoints where account_id = ?", Integer.class, cardId));
+    }
+
+    private long insertAccount(long groupId, String name, String currency) {
+        return jdbcTemplate.queryForObject("insert into accounts (group_id, name, currency, scale, start_balance) "
+                + "values (?, ?, ?, 2, 0) returning id", Long.class, groupId, name, currency);
+    }
+
+    private long insertTransaction(long userId, String opdate, Long account, Long recipient, long debit,
+            long credit, Long categoryId) {
+        return jdbcTemplate.queryForObject("insert into transactions (owner_id, opdate, account_id, debit, "
+                + "recipient_id, credit, category_id, currency) values (?, ?, ?, ?, ?, ?, ?, ?) returning id",
+                Long.class, userId, LocalDateTime.parse(opdate.replace(' ', 'T')), account, debit, recipient,
+                credit, categoryId, categoryId == null ? null : "EUR");
+    }
+
+    private Map<String, Object> row(long id) {
+        return jdbcTemplate.queryForMap("select account_id, recipient_id, currency, party from transactions "
+                + "where id = ?", id);
+    }
+
+    private BigDecimal balance() {
+        return transactionService.getAccountBalances(List.of(walletId), null).balance(walletId, BigDecimal.ZERO);
+    }
+
+    private List<Map<String, Object>> checkpoints() {
+        return jdbcTemplate.queryForList("select * from balance_checkpoints where account_id = ? order by period",
+                walletId);
+    }
+
+    private List<Map<String, Object>> rollups() {
+        return jdbcTemplate.queryForList(ROLLUPS + " order by account_id, recipient_id, category_id, period");
+    }
+}
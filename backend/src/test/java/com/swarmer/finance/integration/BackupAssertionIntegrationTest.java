@@ -0,0 +1,123 @@
+package com.swarmer.finance.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.swarmer.finance.dto.dump.Dump;
+import com.swarmer.finance.dto.dump.DumpAssertion;
+import com.swarmer.finance.dto.dump.DumpTransaction;
+import com.swarmer.finance.services.BackupService;
+
+/**
+ * Balance assertions restored from a dump: assertions on accounts of other
+ * users are refused, and a legacy correction row on a shared account asserts
+ * the balance of the whole ledger, not only of the restoring user's rows.
+ */
+@SpringBootTest
+@Testcontainers
+public class BackupAssertionIntegrationTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 2, 1, 0, 0);
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BackupService backupService;
+
+    private long ownerId;
+    private long guestId;
+    private long groupId;
+    private long accountId;
+
+    @BeforeEach
+    void setup() {
+        jdbcTemplate.execute("truncate users, categories, account_groups, accounts, acl, transactions, rules "
+                + "restart identity cascade");
+        jdbcTemplate.execute("insert into categories (id, name) values (1, 'Expense'), (2, 'Income'), "
+                + "(3, 'Correction')");
+        jdbcTemplate.execute("select setval('categories_id_seq', 3)");
+        ownerId = insertUser("owner@test");
+        guestId = insertUser("guest@test");
+        groupId = jdbcTemplate.queryForObject(
+                "insert into account_groups (owner_id, name) values (?, 'Cash') returning id", Long.class, ownerId);
+        accountId = jdbcTemplate.queryForObject("insert into accounts (group_id, currency, scale, start_balance) "
+                + "values (?, 'EUR', 2, 0) returning id", Long.class, groupId);
+        // the owner's income, which is not in the guest's dump
+        jdbcTemplate.update("insert into transactions (owner_id, opdate, recipient_id, debit, credit, category_id, "
+                + "currency) values (?, ?, ?, 10000, 10000, 2, 'EUR')", ownerId, LocalDateTime.of(2024, 1, 5, 12, 0),
+                accountId);
+    }
+
+    @Test
+    void refusesAssertionsOnForeignAccounts() {
+        var dump = dump(List.of(), List.of(new DumpAssertion(accountId, LocalDateTime.of(2024, 1, 31, 0, 0),
+                new BigDecimal("1.00"), NOW, NOW)));
+
+        var exception = assertThrows(RuntimeException.class, () -> backupService.loadDump(guestId, dump, false));
+        assertTrue(exception.getMessage().contains("is not owner"));
+
+        backupService.loadDump(guestId, dump, true);
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from balance_assertions", Integer.class));
+    }
+
+    @Test
+    void legacyCorrectionAssertsSharedLedger() {
+        jdbcTemplate.update("insert into acl (group_id, user_id, is_readonly, is_admin) values (?, ?, false, false)",
+                groupId, guestId);
+        var correctionDate = LocalDateTime.of(2024, 1, 20, 12, 0);
+        var dump = dump(List.of(
+                transaction(LocalDateTime.of(2024, 1, 10, 12, 0), accountId, null, "10.00", 1L),
+                transaction(correctionDate, null, accountId, "5.00", 3L)), List.of());
+
+        backupService.loadDump(guestId, dump, false);
+
+        // 100.00 of the owner, -10.00 of the guest and the correction of 5.00
+        assertEquals(0, new BigDecimal("9500").compareTo(jdbcTemplate.queryForObject(
+                "select balance from balance_assertions where account_id = ? and opdate = ?", BigDecimal.class,
+                accountId, correctionDate)));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from transactions where category_id = 3",
+                Integer.class));
+    }
+
+    private Dump dump(List<DumpTransaction> transactions, List<DumpAssertion> assertions) {
+        return new Dump(guestId, NOW, List.of(), List.of(), transactions, List.of(), assertions);
+    }
+
+    private static DumpTransaction transaction(LocalDateTime opdate, Long account, Long recipient, String amount,
+            Long categoryId) {
+        var value = new BigDecimal(amount);
+        return new DumpTransaction(null, opdate, account, value, recipient, value, categoryId, "EUR", null, null,
+                NOW, NOW);
+    }
+
+    private long insertUser(String email) {
+        return jdbcTemplate.queryForObject(
+                "insert into users (email, name, password) values (?, 'User', 'x') returning id", Long.class, email);
+    }
+}
@@ -0,0 +1,126 @@
+package com.swarmer.finance.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.swarmer.finance.dto.BalanceAssertionDto;
+import com.swarmer.finance.dto.ImportDto;
+import com.swarmer.finance.dto.TransactionDto;
+import com.swarmer.finance.models.TransactionType;
+import com.swarmer.finance.services.BalanceAssertionService;
+import com.swarmer.finance.services.TransactionService;
+
+/**
+ * Balances around a balance assertion: the correction it implies is derived
+ * from the transactions before it, so a backdated write before the assertion
+ * changes the correction and leaves the balances after the assertion as
+ * asserted.
+ */
+@SpringBootTest
+@Testcontainers
+public class BalanceAssertionIntegrationTest {
+    private static final LocalDateTime ASSERTED = LocalDateTime.of(2024, 1, 31, 23, 59);
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private BalanceAssertionService assertionService;
+
+    private long userId;
+    private long accountId;
+
+    @BeforeEach
+    void setup() {
+        jdbcTemplate.execute("truncate users, categories, account_groups, accounts, acl, transactions, rules "
+                + "restart identity cascade");
+        jdbcTemplate.execute("insert into categories (id, name) values (1, 'Expense'), (2, 'Income'), "
+                + "(3, 'Correction')");
+        jdbcTemplate.execute("select setval('categories_id_seq', 3)");
+        userId = jdbcTemplate.queryForObject(
+                "insert into users (email, name, password) values ('assert@test', 'Assert', 'x') returning id",
+                Long.class);
+        var groupId = jdbcTemplate.queryForObject(
+                "insert into account_groups (owner_id, name) values (?, 'Cash') returning id", Long.class, userId);
+        accountId = jdbcTemplate.queryForObject("insert into accounts (group_id, currency, scale, start_balance) "
+                + "values (?, 'EUR', 2, 0) returning id", Long.class, groupId);
+    }
+
+    @Test
+    void backdatedWriteKeepsAssertedBalance() {
+        write(LocalDateTime.of(2024, 1, 10, 12, 0), TransactionType.EXPENSE, "10.00");
+        write(LocalDateTime.of(2024, 1, 20, 12, 0), TransactionType.INCOME, "100.00");
+        assertionService.saveAssertion(new BalanceAssertionDto(null, accountId, ASSERTED, new BigDecimal("150.00")),
+                userId);
+        write(LocalDateTime.of(2024, 2, 5, 12, 0), TransactionType.EXPENSE, "20.00");
+        // read once, so the balance index holds the balance before the backdated write
+        assertEquals(0, new BigDecimal("13000").compareTo(currentBalance()));
+
+        write(LocalDateTime.of(2024, 1, 15, 12, 0), TransactionType.EXPENSE, "5.00");
+
+        assertEquals(0, new BigDecimal("13000").compareTo(currentBalance()));
+        assertEquals(0, new BigDecimal("15000").compareTo(balanceBefore(LocalDateTime.of(2024, 2, 1, 0, 0))));
+        assertEquals(0, new BigDecimal("8500").compareTo(balanceBefore(LocalDateTime.of(2024, 1, 31, 0, 0))));
+        var page = pageBalances();
+        assertEquals(0, new BigDecimal("130.00").compareTo(page.get(LocalDateTime.of(2024, 2, 5, 12, 0))));
+        assertEquals(0, new BigDecimal("85.00").compareTo(page.get(LocalDateTime.of(2024, 1, 20, 12, 0))));
+        assertEquals(0, new BigDecimal("-15.00").compareTo(page.get(LocalDateTime.of(2024, 1, 15, 12, 0))));
+        assertEquals(0, new BigDecimal("-10.00").compareTo(page.get(LocalDateTime.of(2024, 1, 10, 12, 0))));
+    }
+
+    private void write(LocalDateTime opdate, TransactionType type, String amount) {
+        var value = new BigDecimal(amount);
+        transactionService.saveImport(userId, accountId, List.of(new ImportDto(null, opdate, type, value, value,
+                null, null, "EUR", null, null, null, true)));
+    }
+
+    private BigDecimal currentBalance() {
+        return transactionService.getAccountBalances(List.of(accountId), null).balance(accountId, BigDecimal.ZERO);
+    }
+
+    private BigDecimal balanceBefore(LocalDateTime to) {
+        return transactionService.getAccountBalances(List.of(accountId), to).balance(accountId, BigDecimal.ZERO);
+    }
+
+    /**
+     * Returns the balances after each transaction as listed in pages of two.
+     */
+    private Map<LocalDateTime, BigDecimal> pageBalances() {
+        var first = transactionService.getTransactions(userId, null, null, null, null, null, null, 0, 2, null);
+        var second = transactionService.getTransactions(userId, null, null, null, null, null, null, 0, 2,
+                first.cursor());
+        return Stream.concat(first.transactions().stream(), second.transactions().stream())
+                .collect(Collectors.toMap(TransactionDto::opdate,
+                        t -> t.account() != null ? t.account().balance() : t.recipient().balance()));
+    }
+}
@@ -0,0 +1,177 @@
+package com.swarmer.finance.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.swarmer.finance.dto.ImportDto;
+import com.swarmer.finance.models.TransactionType;
+import com.swarmer.finance.services.BackupService;
+import com.swarmer.finance.services.TransactionService;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Compares import and restore throughput with JDBC batching as configured and
+ * with batching switched off for the session, which is how every insert ran
+ * while ids came from identity columns. Both modes run a few times unmeasured
+ * before the measured rounds, which alternate the mode that goes first, and
+ * the median of each mode is reported. Run with -Dbenchmark=true.
+ */
+@SpringBootTest
+@Testcontainers
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class BulkWriteBenchmarkIntegrationTest {
+    private static final int ROWS = 5000;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private BackupService backupService;
+
+    private long userId;
+    private long accountId;
+
+    @BeforeEach
+    void setup() {
+        jdbcTemplate.execute("truncate users, categories, account_groups, accounts, acl, transactions, rules "
+                + "restart identity cascade");
+        jdbcTemplate.execute("insert into categories (id, name) values (1, 'Expense'), (2, 'Income'), "
+                + "(3, 'Correction')");
+        jdbcTemplate.execute("select setval('categories_id_seq', 3)");
+        userId = jdbcTemplate.queryForObject(
+                "insert into users (email, name, password) values ('bench@test', 'Bench', 'x') returning id",
+                Long.class);
+        var groupId = jdbcTemplate.queryForObject(
+                "insert into account_groups (owner_id, name) values (?, 'Cash') returning id", Long.class, userId);
+        accountId = jdbcTemplate.queryForObject(
+                "insert into accounts (group_id, currency) values (?, 'EUR') returning id", Long.class, groupId);
+    }
+
+    @Test
+    void importThroughput() {
+        var timings = compare(() -> transactionService.saveImport(userId, accountId, records()));
+        report("import", timings);
+        assertEquals(2 * (WARMUP_ROUNDS + ROUNDS) * ROWS, count());
+    }
+
+    @Test
+    void restoreThroughput() {
+        jdbcTemplate.update("insert into transactions (owner_id, opdate, account_id, debit, credit, currency) "
+                + "select ?, timestamp '2020-01-01' + g * interval '1 hour', ?, g, g, 'EUR' "
+                + "from generate_series(1, ?) g", userId, accountId, ROWS);
+        var dump = backupService.getDump(userId);
+        var timings = compare(() -> backupService.loadDump(userId, dump, false));
+        report("restore", timings);
+        assertEquals(ROWS, count());
+    }
+
+    private List<ImportDto> records() {
+        var start = LocalDateTime.of(2020, 1, 1, 0, 0);
+        return IntStream.range(0, ROWS)
+                .mapToObj(i -> new ImportDto(null, start.plusMinutes(i), TransactionType.EXPENSE,
+                        BigDecimal.valueOf(i + 1, 2), BigDecimal.valueOf(i + 1, 2), null, null, "EUR",
+                        "Shop " + i, null, null, true))
+                .toList();
+    }
+
+    /**
+     * Runs the action unbatched and batched, first in warm-up rounds so
+     * neither mode pays for class loading and JIT compilation alone, then in
+     * measured rounds that alternate which mode goes first.
+     */
+    private Timings compare(Runnable action) {
+        for (var i = 0; i < WARMUP_ROUNDS; i++) {
+            measure(1, action);
+            measure(null, action);
+        }
+        var unbatched = new long[ROUNDS];
+        var batched = new long[ROUNDS];
+        for (var i = 0; i < ROUNDS; i++) {
+            if (i % 2 == 0) {
+                unbatched[i] = measure(1, action);
+                batched[i] = measure(null, action);
+            } else {
+                batched[i] = measure(null, action);
+                unbatched[i] = measure(1, action);
+            }
+        }
+        return new Timings(median(unbatched), median(batched));
+    }
+
+    /**
+     * Runs the action in one transaction and returns the elapsed nanoseconds.
+     * A null batch size keeps the configured one.
+     */
+    private long measure(Integer batchSize, Runnable action) {
+        var start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            action.run();
+            entityManager.flush();
+        });
+        return System.nanoTime() - start;
+    }
+
+    private long count() {
+        return jdbcTemplate.queryForObject("select count(*) from transactions where owner_id = ?", Long.class,
+                userId);
+    }
+
+    private static long median(long[] values) {
+        var sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void report(String name, Timings timings) {
+        System.out.printf("%s of %d rows, median of %d rounds: %.0f rows/s unbatched, %.0f rows/s batched%n",
+                name, ROWS, ROUNDS, ROWS * 1e9 / timings.unbatched(), ROWS * 1e9 / timings.batched());
+    }
+
+    /**
+     * Median elapsed nanoseconds of each mode.
+     */
+    private record Timings(long unbatched, long batched) {
+    }
+}
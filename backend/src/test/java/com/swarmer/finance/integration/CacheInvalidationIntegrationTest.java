@@ -0,0 +1,167 @@
+package com.swarmer.finance.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.swarmer.finance.services.AclService;
+import com.swarmer.finance.services.CategoryService;
+import com.swarmer.finance.services.TransactionService;
+
+/**
+ * Plays another instance: writes go straight to the database and are followed
+ * by the notification that instance would send, and the caches of this one
+ * have to drop what they hold.
+ */
+@SpringBootTest
+@Testcontainers
+public class CacheInvalidationIntegrationTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AclService aclService;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private long ownerId;
+    private long guestId;
+    private long groupId;
+    private long accountId;
+
+    @BeforeEach
+    void setup() {
+        jdbcTemplate.execute("truncate users, categories, account_groups, accounts, acl, transactions, rules "
+                + "restart identity cascade");
+        jdbcTemplate.execute("insert into categories (id, name) values (1, 'Expense'), (2, 'Income'), "
+                + "(3, 'Correction')");
+        jdbcTemplate.execute("select setval('categories_id_seq', 3)");
+        ownerId = insertUser("owner@test");
+        guestId = insertUser("guest@test");
+        groupId = jdbcTemplate.queryForObject(
+                "insert into account_groups (owner_id, name) values (?, 'Cash') returning id", Long.class, ownerId);
+        accountId = jdbcTemplate.queryForObject(
+                "insert into accounts (group_id, currency, scale) values (?, 'EUR', 2) returning id", Long.class,
+                groupId);
+    }
+
+    @Test
+    void sharingElsewhereGrantsAndRevokesAccess() {
+        assertEquals(0, aclService.getAccessibleAccounts(guestId).size());
+
+        jdbcTemplate.update("insert into acl (group_id, user_id, is_readonly, is_admin) values (?, ?, true, false)",
+                groupId, guestId);
+        notify("acl:" + guestId);
+        await(() -> aclService.getAccessibleAccounts(guestId).size(), 1);
+        assertEquals(accountId, aclService.getAccessibleAccounts(guestId).get(0).id());
+
+        jdbcTemplate.update("delete from acl where group_id = ? and user_id = ?", groupId, guestId);
+        notify("acl:" + guestId);
+        await(() -> aclService.getAccessibleAccounts(guestId).size(), 0);
+    }
+
+    @Test
+    void renameElsewhereRefreshesViews() {
+        assertEquals("Cash", fullName());
+
+        jdbcTemplate.update("update account_groups set name = 'Wallet' where id = ?", groupId);
+        notify("acl:" + ownerId);
+        await(this::fullName, "Wallet");
+    }
+
+    /**
+     * Reads the view in a transaction, as the services do, so lazy
+     * collections of the accounts can load.
+     */
+    private String fullName() {
+        return transactionTemplate.execute(status -> aclService.getAccountViews(ownerId).get(accountId).fullName());
+    }
+
+    @Test
+    void writeElsewhereRefreshesBalance() {
+        assertEquals(0, BigDecimal.ZERO.compareTo(balance()));
+
+        jdbcTemplate.update("insert into transactions (owner_id, opdate, recipient_id, debit, credit, currency) "
+                + "values (?, now(), ?, 500, 500, 'EUR')", ownerId, accountId);
+        notify("balances:" + accountId);
+        await(() -> balance().intValueExact(), 500);
+    }
+
+    @Test
+    void categoryElsewhereRefreshesTree() {
+        assertEquals(3, categoryCount());
+
+        jdbcTemplate.update("insert into categories (owner_id, parent_id, name) values (?, 1, 'Food')", ownerId);
+        notify("categories:" + ownerId);
+        await(this::categoryCount, 4);
+    }
+
+    private int categoryCount() {
+        return transactionTemplate.execute(status -> categoryService.getTree(ownerId).categories().size());
+    }
+
+    private BigDecimal balance() {
+        return transactionService.getAccountBalances(List.of(accountId), null).balance(accountId, BigDecimal.ZERO);
+    }
+
+    private long insertUser(String email) {
+        return jdbcTemplate.queryForObject(
+                "insert into users (email, name, password) values (?, 'User', 'x') returning id", Long.class, email);
+    }
+
+    private void notify(String payload) {
+        jdbcTemplate.queryForList("select pg_notify('cache_invalidation', ?)", payload);
+    }
+
+    /**
+     * Reads until the value is the expected one or the timeout is over.
+     */
+    private static <T> void await(Supplier<T> read, T expected) {
+        var deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!expected.equals(read.get())) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Still " + read.get() + " instead of " + expected);
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.swarmer.finance.integration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.swarmer.finance.models.TransactionType;
+import com.swarmer.finance.services.BackupService;
+import com.swarmer.finance.services.CheckpointService;
+import com.swarmer.finance.services.TransactionService;
+
+/**
+ * Captures the SQL Hibernate sends for the ledger reads of the services, runs
+ * EXPLAIN on it against a ledger of many users and checks the plans use the
+ * expected indexes and never scan the large tables sequentially. The planner
+ * runs with its default settings, so a missing index shows up as a
+ * sequential scan. EXPLAIN (GENERIC_PLAN) needs PostgreSQL 16.
+ */
+@SpringBootTest
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class LedgerIndexIntegrationTest {
+    private static final int USERS = 100;
+    private static final int TRANSACTIONS = 300_000;
+    private static final List<String> LARGE_TABLES = List.of("transactions", "postings", "balance_checkpoints",
+            "monthly_rollups");
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.properties.hibernate.session_factory.statement_inspector",
+                CapturingInspector.class::getName);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private CheckpointService checkpointService;
+
+    @Autowired
+    private BackupService backupService;
+
+    private long userId;
+    private List<Long> accountIds;
+
+    @BeforeAll
+    void setup() {
+        jdbcTemplate.execute("truncate users, categories, account_groups, accounts, acl, transactions, rules "
+                + "restart identity cascade");
+        jdbcTemplate.execute("insert into categories (id, name) values (1, 'Expense'), (2, 'Income'), "
+                + "(3, 'Correction')");
+        jdbcTemplate.execute("select setval('categories_id_seq', 3)");
+        jdbcTemplate.update("insert into users (email, name, password) "
+                + "select 'plan' || g || '@test', 'Plan', 'x' from generate_series(1, ?) g", USERS);
+        jdbcTemplate.execute("insert into account_groups (owner_id, name) select id, 'Cash' from users");
+        jdbcTemplate.execute("insert into accounts (group_id, currency) "
+                + "select g.id, c.currency from account_groups g, (values ('EUR'), ('USD')) c (currency)");
+        jdbcTemplate.execute("insert into categories (owner_id, parent_id, name) select id, 1, 'Food' from users");
+        // expenses, incomes and transfers between the two accounts of each user
+        jdbcTemplate.update("with w as (select row_number() over (order by g.owner_id) - 1 as n, g.owner_id, "
+                + "e.id as eur, u.id as usd, c.id as category from account_groups g "
+                + "join accounts e on e.group_id = g.id and e.currency = 'EUR' "
+                + "join accounts u on u.group_id = g.id and u.currency = 'USD' "
+                + "join categories c on c.owner_id = g.owner_id) "
+                + "insert into transactions (owner_id, opdate, account_id, debit, recipient_id, credit, "
+                + "category_id, currency, party, details) "
+                + "select w.owner_id, timestamp '2019-01-01' + s * interval '7 minutes', "
+                + "case when s % 3 <> 1 then w.eur end, s % 1000 + 1, "
+                + "case when s % 3 = 1 then w.eur when s % 3 = 2 then w.usd end, s % 1000 + 1, "
+                + "case when s % 3 = 0 then w.category end, 'EUR', 'Shop ' || s % 50, 'Card ' || s % 7 "
+                + "from generate_series(1, ?) s join w on w.n = s % ?", TRANSACTIONS, USERS);
+        checkpointService.rebuild(jdbcTemplate.queryForList("select id from accounts", Long.class));
+        jdbcTemplate.execute("analyze");
+        userId = jdbcTemplate.queryForObject("select min(owner_id) from account_groups", Long.class);
+        accountIds = jdbcTemplate.queryForList("select a.id from accounts a join account_groups g "
+                + "on g.id = a.group_id where g.owner_id = ? order by a.id", Long.class, userId);
+    }
+
+    @Test
+    void pagesUsePostingsIndex() {
+        var plans = explain(() -> transactionService.getTransactions(userId, null, null, null, null, null, null, 0,
+                50, null));
+        assertUses(plans, "postings_account_opdate_idx");
+        var page = transactionService.getTransactions(userId, null, null, null, null, null, null, 0, 50, null);
+        plans = explain(() -> transactionService.getTransactions(userId, null, null, null, null, null, null, 0, 50,
+                page.cursor()));
+        assertUses(plans, "postings_account_opdate_idx");
+    }
+
+    @Test
+    void searchUsesIndexes() {
+        var plans = explain(() -> transactionService.getTransactions(userId, null, "shop 4", null, null, null, null,
+                0, 50, null));
+        assertUses(plans, "postings_account_opdate_idx");
+    }
+
+    @Test
+    void balancesUseCheckpoints() {
+        var plans = explain(() -> transactionService.getAccountBalances(accountIds, LocalDateTime.of(2021, 6, 15,
+                12, 0)));
+        assertUses(plans, "balance_checkpoints_pkey", "postings_account_opdate_idx");
+    }
+
+    @Test
+    void summariesUseRollups() {
+        var from = LocalDateTime.of(2020, 3, 15, 0, 0);
+        var to = LocalDateTime.of(2021, 9, 10, 0, 0);
+        var plans = explain(() -> transactionService.getSummary(userId, null, null, null, from, to));
+        assertUses(plans, "monthly_rollups_recipient_idx");
+        plans = explain(() -> transactionService.getCategoriesSummary(userId, TransactionType.EXPENSE, null, from,
+                to));
+        assertUses(plans);
+    }
+
+    @Test
+    void dumpUsesOwnerIndex() {
+        var plans = explain(() -> backupService.getDump(userId));
+        assertUses(plans, "transactions_owner_idx");
+    }
+
+    /**
+     * Runs the action and returns the plans of the queries it sent.
+     */
+    private String explain(Runnable action) {
+        CapturingInspector.STATEMENTS.clear();
+        action.run();
+        var statements = List.copyOf(CapturingInspector.STATEMENTS);
+        assertFalse(statements.isEmpty(), "No statements captured");
+        return statements.stream()
+                .filter(sql -> sql.stripLeading().toLowerCase().matches("(?s)^(select|with)\\b.*"))
+                .map(sql -> sql + "\n" + String.join("\n",
+                        jdbcTemplate.queryForList("explain (generic_plan) " + numbered(sql), String.class)))
+                .collect(Collectors.joining("\n\n"));
+    }
+
+    private static void assertUses(String plans, String... indexes) {
+        for (var table : LARGE_TABLES) {
+            assertFalse(plans.contains("Seq Scan on " + table + " "),
+                    () -> "Sequential scan on " + table + ":\n" + plans);
+        }
+        for (var index : indexes) {
+            assertTrue(plans.contains(" " + index + " "), () -> "Index " + index + " not used:\n" + plans);
+        }
+    }
+
+    /**
+     * Replaces JDBC placeholders with the numbered ones EXPLAIN accepts.
+     */
+    private static String numbered(String sql) {
+        var result = new StringBuilder();
+        var quoted = false;
+        var n = 0;
+        for (var c : sql.toCharArray()) {
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+            if (c == '?' && !quoted) {
+                result.append('$').append(++n);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    public static class CapturingInspector implements StatementInspector {
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
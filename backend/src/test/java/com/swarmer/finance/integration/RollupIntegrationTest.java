@@ -0,0 +1,171 @@
+package com.swarmer.finance.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.swarmer.finance.services.CheckpointService;
+import com.swarmer.finance.services.TransactionService;
+
+/**
+ * Monthly rollups against the transactions they are built from: the stored
+ * rows, the summaries read from them, and the rows of a transfer whose two
+ * ends are refreshed at the same time.
+ */
+@SpringBootTest
+@Testcontainers
+public class RollupIntegrationTest {
+    private static final String ROLLUPS = "select account_id, recipient_id, category_id, period, debit, credit, "
+            + "opdate from monthly_rollups";
+    private static final String AGGREGATED = "select account_id, recipient_id, category_id, "
+            + "cast(date_trunc('month', opdate) as date), sum(debit), sum(credit), max(opdate) from transactions "
+            + "group by account_id, recipient_id, category_id, cast(date_trunc('month', opdate) as date)";
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CheckpointService checkpointService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    private long userId;
+    private long walletId;
+    private long cardId;
+
+    @BeforeEach
+    void setup() {
+        jdbcTemplate.execute("truncate users, categories, account_groups, accounts, acl, transactions, rules "
+                + "restart identity cascade");
+        jdbcTemplate.execute("insert into categories (id, name) values (1, 'Expense'), (2, 'Income'), "
+                + "(3, 'Correction')");
+        jdbcTemplate.execute("select setval('categories_id_seq', 3)");
+        userId = jdbcTemplate.queryForObject(
+                "insert into users (email, name, password) values ('rollup@test', 'Rollup', 'x') returning id",
+                Long.class);
+        var groupId = jdbcTemplate.queryForObject(
+                "insert into account_groups (owner_id, name) values (?, 'Cash') returning id", Long.class, userId);
+        walletId = insertAccount(groupId, "Wallet");
+        cardId = insertAccount(groupId, "Card");
+        // expenses, incomes and transfers both ways between the two accounts, from November to June
+        jdbcTemplate.update("insert into transactions (owner_id, opdate, account_id, debit, recipient_id, credit, "
+                + "category_id, currency) "
+                + "select ?, timestamp '2023-11-01 10:00' + s * interval '13 hours', "
+                + "case s % 4 when 0 then ? when 2 then ? when 3 then ? end, 100 + s, "
+                + "case s % 4 when 1 then ? when 2 then ? when 3 then ? end, 100 + s, "
+                + "case s % 4 when 0 then 1 when 1 then 2 end, 'EUR' from generate_series(1, 400) s",
+                userId, walletId, walletId, cardId, walletId, cardId, walletId);
+        checkpointService.rebuild(List.of(walletId, cardId));
+    }
+
+    @Test
+    void rollupsMatchTransactions() {
+        assertEquals(0, difference());
+    }
+
+    @Test
+    void summaryMatchesTransactions() {
+        var from = LocalDateTime.of(2024, 1, 1, 0, 0);
+        var to = LocalDateTime.of(2024, 4, 1, 0, 0);
+        var summary = transactionService.getSummary(userId, List.of(walletId), null, null, from, to).iterator()
+                .next();
+
+        assertEquals(0, sum("debit", "account_id = ? and recipient_id is null", from, to)
+                .compareTo(summary.getDebit()));
+        assertEquals(0, sum("credit", "recipient_id = ? and account_id is null", from, to)
+                .compareTo(summary.getCredit()));
+        assertEquals(0, sum("debit", "account_id = ? and recipient_id is not null", from, to)
+                .compareTo(summary.getTransfers_debit()));
+        assertEquals(0, sum("credit", "recipient_id = ? and account_id is not null", from, to)
+                .compareTo(summary.getTransfers_credit()));
+    }
+
+    @Test
+    void refreshesOfBothEndsOfATransfer() {
+        var walletRefreshed = new CountDownLatch(1);
+        var wallet = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            checkpointService.refresh(List.of(walletId), null);
+            walletRefreshed.countDown();
+            // keep the rebuilt rows uncommitted while the card refresh starts
+            pause(500);
+        }));
+        var card = CompletableFuture.runAsync(() -> {
+            await(walletRefreshed);
+            transactionTemplate.executeWithoutResult(status -> checkpointService.refresh(List.of(cardId), null));
+        });
+
+        CompletableFuture.allOf(wallet, card).join();
+        assertEquals(0, difference());
+    }
+
+    private long insertAccount(long groupId, String name) {
+        return jdbcTemplate.queryForObject("insert into accounts (group_id, name, currency, scale) "
+                + "values (?, ?, 'EUR', 2) returning id", Long.class, groupId, name);
+    }
+
+    /**
+     * Returns the number of rows in either the rollups or the aggregation of
+     * the transactions but not in both.
+     */
+    private int difference() {
+        return jdbcTemplate.queryForObject("select count(*) from ((" + ROLLUPS + " except all " + AGGREGATED
+                + ") union all (" + AGGREGATED + " except all " + ROLLUPS + ")) d", Integer.class);
+    }
+
+    /**
+     * Sums a column of the wallet's transactions between from and to, scaled
+     * to the wallet's two decimals.
+     */
+    private BigDecimal sum(String column, String where, LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.queryForObject("select coalesce(sum(" + column + "), 0) / 100.0 from transactions "
+                + "where " + where + " and opdate >= ? and opdate < ?", BigDecimal.class, walletId, from, to);
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
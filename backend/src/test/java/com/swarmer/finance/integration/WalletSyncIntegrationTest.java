@@ -0,0 +1,117 @@
+package com.swarmer.finance.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.swarmer.finance.services.WalletService;
+
+/**
+ * Housekeeping of wallet sync jobs: jobs left behind by a node that stopped
+ * are failed and give up their leases, live ones are left alone, old
+ * finished ones are deleted, and an owner taken by one node's scheduled
+ * round gets no second job from another.
+ */
+@SpringBootTest
+@Testcontainers
+public class WalletSyncIntegrationTest {
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private WalletService walletService;
+
+    private long userId;
+    private long accountId;
+
+    @BeforeEach
+    void setup() {
+        jdbcTemplate.execute("truncate users, categories, account_groups, accounts, acl, transactions, rules "
+                + "restart identity cascade");
+        userId = jdbcTemplate.queryForObject(
+                "insert into users (email, name, password) values ('wallet@test', 'Wallet', 'x') returning id",
+                Long.class);
+        var groupId = jdbcTemplate.queryForObject(
+                "insert into account_groups (owner_id, name) values (?, 'Crypto') returning id", Long.class, userId);
+        accountId = jdbcTemplate.queryForObject("insert into accounts (group_id, currency, chain, address) "
+                + "values (?, 'BTC', 'btc', 'bc1qtest') returning id", Long.class, groupId);
+    }
+
+    @Test
+    void sweepFailsAbandonedJobs() {
+        var abandoned = insertJob("stopped-node", LocalDateTime.now().minusDays(1));
+        var live = insertJob("live-node", LocalDateTime.now());
+        jdbcTemplate.update("insert into wallet_sync_leases (account_id, holder, expires) values (?, ?, ?)",
+                accountId, "stopped-node/" + abandoned, LocalDateTime.now().plusDays(1));
+
+        walletService.failAbandonedJobs();
+
+        assertEquals("FAILED", status("wallet_sync_jobs", "id", abandoned));
+        assertEquals("FAILED", status("wallet_sync_items", "job_id", abandoned));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "select count(*) from wallet_sync_jobs where id = ? and finished is not null", Integer.class,
+                abandoned));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from wallet_sync_leases", Integer.class));
+        assertEquals("RUNNING", status("wallet_sync_jobs", "id", live));
+        assertEquals("RUNNING", status("wallet_sync_items", "job_id", live));
+    }
+
+    @Test
+    void cleanupDeletesOldFinishedJobs() {
+        var old = insertJob("node", LocalDateTime.now().minusDays(60));
+        var recent = insertJob("node", LocalDateTime.now().minusDays(1));
+        jdbcTemplate.update("update wallet_sync_jobs set status = 'DONE', finished = updated");
+
+        walletService.deleteFinishedJobs();
+
+        assertEquals(List.of(recent), jdbcTemplate.queryForList("select id from wallet_sync_jobs", Long.class));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from wallet_sync_items where job_id = ?",
+                Integer.class, old));
+    }
+
+    @Test
+    void takenOwnerGetsNoJob() {
+        jdbcTemplate.update("insert into wallet_sync_owner_leases (owner_id, holder, expires) "
+                + "values (?, 'other-node', localtimestamp + interval '1 hour')", userId);
+
+        assertFalse(walletService.importWalletsOnce(userId, List.of(accountId), Duration.ofMinutes(30)));
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from wallet_sync_jobs", Integer.class));
+    }
+
+    private long insertJob(String nodeId, LocalDateTime updated) {
+        var jobId = jdbcTemplate.queryForObject("insert into wallet_sync_jobs (owner_id, node_id, status, updated) "
+                + "values (?, ?, 'RUNNING', ?) returning id", Long.class, userId, nodeId, updated);
+        jdbcTemplate.update("insert into wallet_sync_items (job_id, account_id, status, updated) "
+                + "values (?, ?, 'RUNNING', ?)", jobId, accountId, updated);
+        return jobId;
+    }
+
+    private String status(String table, String column, long jobId) {
+        return jdbcTemplate.queryForObject("select status from " + table + " where " + column + " = ?",
+                String.class, jobId);
+    }
+}